@@ -0,0 +1,63 @@
+package org.networks.java.benchmarks;
+
+import org.networks.java.helper.Constants;
+import org.networks.java.model.PeerInfo;
+import org.networks.java.service.Peer;
+import org.networks.java.service.Session;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Sets up real peer state for the benchmarks. The peer reads its configuration from the working directory
+ * and keeps its data under {@code peer_<id>}, so benchmarks are run from a scratch directory (see the
+ * {@code bench} target in the makefile).
+ */
+final class BenchmarkFixture {
+
+    private BenchmarkFixture() {
+    }
+
+    static void writeConfig(String fileName, String dataFileName, long fileSize, int pieceSize) throws IOException {
+        String config = "NumberOfPreferredNeighbors 4\n"
+                + "UnchokingInterval 5\n"
+                + "OptimisticUnchokingInterval 10\n"
+                + "FileName " + dataFileName + "\n"
+                + "FileSize " + fileSize + "\n"
+                + "PieceSize " + pieceSize + "\n"
+                + "FsyncPolicy NEVER\n"
+                + "ResumeSpotCheckPercent 0\n"
+                + "AllowUnverifiedPieces true\n"
+                + "RateLimitReloadInterval 0\n";
+        Files.writeString(workingDirectory().resolve(fileName), config);
+    }
+
+    /**
+     * Creates a leeching peer for a file of {@code pieces} pieces without starting any network activity.
+     */
+    static Peer newPeer(String peerId, int pieces, int pieceSize) throws IOException {
+        deletePeerDirectory(peerId);
+        writeConfig(Constants.COMMON_CFG_FILE_NAME, "bench.dat", (long) pieces * pieceSize, pieceSize);
+        Session session = new Session(new PeerInfo(peerId, "localhost", 0, false), Collections.emptyList());
+        return session.getSwarms().iterator().next();
+    }
+
+    static void deletePeerDirectory(String peerId) throws IOException {
+        Path directory = workingDirectory().resolve(Constants.FILE_DIR_PREFIX_PATH + peerId);
+        if (!Files.exists(directory))
+            return;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    private static Path workingDirectory() {
+        return Paths.get(System.getProperty(Constants.USER_DIR_PATH));
+    }
+}
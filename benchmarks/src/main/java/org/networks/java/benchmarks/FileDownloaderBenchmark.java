@@ -0,0 +1,75 @@
+package org.networks.java.benchmarks;
+
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.helper.FileDownloader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Piece storage: reads served from the mapped file and writes through the write-behind queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileDownloaderBenchmark {
+
+    private static final String PEER_ID = "9002";
+    private static final String CONFIG_FILE = "FileDownloaderBenchmark.cfg";
+    private static final int PIECES = 4096;
+
+    @Param({"16384", "262144"})
+    public int pieceSize;
+
+    private FileDownloader fileDownloader;
+    private byte[] piece;
+    private int nextPiece;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixture.deletePeerDirectory(PEER_ID);
+        BenchmarkFixture.writeConfig(CONFIG_FILE, "bench.dat", (long) PIECES * pieceSize, pieceSize);
+        fileDownloader = new FileDownloader("bench.dat", false, new CommonConfig(CONFIG_FILE), PEER_ID);
+        piece = new byte[pieceSize];
+        new SplittableRandom(42).nextBytes(piece);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileDownloader.closeFile();
+        BenchmarkFixture.deletePeerDirectory(PEER_ID);
+    }
+
+    @Benchmark
+    public byte[] getFilePiece() {
+        return fileDownloader.getFilePiece(nextPiece());
+    }
+
+    @Benchmark
+    public void addFilePiece() throws IOException {
+        fileDownloader.addFilePiece(piece, nextPiece());
+    }
+
+    private int nextPiece() {
+        int pieceIndex = nextPiece;
+        nextPiece = (pieceIndex + 1) % PIECES;
+        return pieceIndex;
+    }
+}
@@ -0,0 +1,113 @@
+package org.networks.java.benchmarks;
+
+import org.networks.java.helper.MessageCodec;
+import org.networks.java.model.BlockMessage;
+import org.networks.java.model.BlockRequest;
+import org.networks.java.model.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.networks.java.helper.Constants.MessageType.*;
+
+/**
+ * Frame encoding and decoding as done by the write and read paths of {@code Client} and
+ * {@code NioConnection}, over a batch of mixed control, HAVE, REQUEST and PIECE messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    private static final int BATCH = 256;
+    private static final int BLOCK_SIZE = 16384;
+
+    private Message[] messages;
+    private ByteBuffer writeBuffer;
+    private ByteBuffer frames;
+
+    @Setup
+    public void setUp() {
+        messages = new Message[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            switch (i % 4) {
+                case 0:
+                    messages[i] = MessageCodec.controlMessage(i % 8 == 0 ? UNCHOKE : INTERESTED);
+                    break;
+                case 1:
+                    messages[i] = MessageCodec.haveMessage(i);
+                    break;
+                case 2:
+                    messages[i] = new BlockMessage(REQUEST, new BlockRequest(i, 0, BLOCK_SIZE));
+                    break;
+                default:
+                    ByteBuffer piece = ByteBuffer.allocate(MessageCodec.PIECE_HEADER_PAYLOAD_LEN + BLOCK_SIZE);
+                    piece.putInt(i).putInt(0);
+                    messages[i] = new Message(PIECE, piece.array());
+            }
+        }
+
+        int encodedLength = 0;
+        for (Message message : messages)
+            encodedLength += MessageCodec.getEncodedLength(message);
+        writeBuffer = ByteBuffer.allocateDirect(encodedLength);
+        frames = ByteBuffer.allocateDirect(encodedLength);
+        for (Message message : messages)
+            MessageCodec.encode(message, frames);
+        frames.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public ByteBuffer encode() {
+        writeBuffer.clear();
+        for (Message message : messages)
+            MessageCodec.encode(message, writeBuffer);
+        return writeBuffer;
+    }
+
+    /**
+     * The handler reads each payload the way {@code Client.handleMessage} does, minus the peer bookkeeping.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void decode(Blackhole blackhole) throws IOException {
+        ByteBuffer buffer = frames.duplicate();
+        while (buffer.hasRemaining()) {
+            MessageCodec.decode(buffer, (messageType, payload) -> {
+                switch (messageType) {
+                    case HAVE:
+                        blackhole.consume(payload.getInt());
+                        break;
+                    case REQUEST:
+                    case CANCEL:
+                        blackhole.consume(new BlockRequest(payload.getInt(), payload.getInt(), payload.getInt()));
+                        break;
+                    case PIECE:
+                        blackhole.consume(payload.getInt());
+                        blackhole.consume(payload.getInt());
+                        blackhole.consume(payload.remaining());
+                        break;
+                    default:
+                        blackhole.consume(messageType);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.networks.java.benchmarks;
+
+import org.networks.java.model.BlockRequest;
+import org.networks.java.model.PeerInfo;
+import org.networks.java.service.Client;
+import org.networks.java.service.Peer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Piece bookkeeping on the peer: claiming block requests, BITFIELD and HAVE handling, and the completion
+ * scan, for swarms of 1k to 1M pieces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeerBenchmark {
+
+    private static final String PEER_ID = "9001";
+    private static final int PIECE_SIZE = 1024;
+    private static final int NEIGHBOURS = 32;
+    private static final String HAVE_NEIGHBOUR = "have";
+
+    @Param({"1000", "100000", "1000000"})
+    public int pieces;
+
+    private Peer peer;
+    private byte[] halfBitField;
+    private byte[] emptyBitField;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        peer = BenchmarkFixture.newPeer(PEER_ID, pieces, PIECE_SIZE);
+        SplittableRandom random = new SplittableRandom(42);
+
+        BitSet half = new BitSet(pieces);
+        for (int i = 0; i < pieces; i++) {
+            if (random.nextBoolean())
+                half.set(i);
+        }
+        halfBitField = toBitField(half);
+        BitSet full = new BitSet(pieces);
+        full.set(0, pieces);
+        byte[] fullBitField = toBitField(full);
+        emptyBitField = new byte[(pieces + 7) / 8];
+
+        for (int i = 0; i < NEIGHBOURS; i++) {
+            String neighbourId = "n" + i;
+            peer.addClient(new Client(peer, new PeerInfo(neighbourId, "localhost", 0, false), null, null));
+            peer.setNeighborBitField(neighbourId, i % 2 == 0 ? fullBitField : halfBitField);
+        }
+        peer.addClient(new Client(peer, new PeerInfo(HAVE_NEIGHBOUR, "localhost", 0, false), null, null));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixture.deletePeerDirectory(PEER_ID);
+    }
+
+    /**
+     * A neighbour's next block request, released again so that every invocation picks a fresh piece
+     * rarest-first.
+     */
+    @Benchmark
+    public BlockRequest claimBlockRequest() {
+        BlockRequest blockRequest = peer.claimBlockRequest("n1");
+        if (blockRequest != null)
+            peer.releaseBlockRequest(blockRequest);
+        return blockRequest;
+    }
+
+    @Benchmark
+    public void setNeighborBitField() {
+        peer.setNeighborBitField("n1", halfBitField);
+    }
+
+    /**
+     * One neighbour announcing every piece with HAVE, starting from an empty bitfield; the score covers
+     * the whole sweep of {@code pieces} updates.
+     */
+    @Benchmark
+    public void updateNeighborPieceIndexSweep() {
+        peer.setNeighborBitField(HAVE_NEIGHBOUR, emptyBitField);
+        for (int i = 0; i < pieces; i++)
+            peer.updateNeighborPieceIndex(HAVE_NEIGHBOUR, i);
+    }
+
+    @Benchmark
+    public List<Client> getCompletedPeers() {
+        return peer.getCompletedPeers();
+    }
+
+    private byte[] toBitField(BitSet pieces) {
+        byte[] bitField = new byte[(this.pieces + 7) / 8];
+        byte[] bytes = pieces.toByteArray();
+        System.arraycopy(bytes, 0, bitField, 0, bytes.length);
+        return bitField;
+    }
+}
@@ -0,0 +1,263 @@
+package org.networks.java;
+
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.helper.Constants;
+import org.networks.java.helper.Metainfo;
+import org.networks.java.helper.SwarmStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a whole swarm on localhost as a repeatable load test. Every peer is a PeerProcess with its own working
+ * directory and port, the first peers seed a generated file, and the stats each peer writes when it finishes
+ * are summarised once all of them have exited. Swarm settings come from the Common.cfg in the current directory.
+ * Usage: {@code LoopbackSwarm <peers> [seeds] [base port] [run directory] [timeout seconds]}
+ */
+public class LoopbackSwarm {
+
+	private static final String JVM_OPTIONS_PROPERTY = "loopback.jvmOptions";
+	private static final String DEFAULT_JVM_OPTIONS = "-Xms16m -Xmx128m -XX:+UseSerialGC -Xss512k";
+	private static final String HOST_NAME = "localhost";
+	private static final int FIRST_PEER_ID = 1001;
+	private static final long FILE_SEED = 1001L;
+	private static final long LISTEN_TIMEOUT_MILLIS = 60_000L;
+	private static final long LISTEN_POLL_MILLIS = 20L;
+	private static final String OUTPUT_FILE_NAME = "stdout.log";
+	private static final String REPORT_FILE_NAME = "report.csv";
+	private static final List<String> OVERRIDDEN_KEYS = Arrays.asList("SwarmConfigs", "WriteStats");
+
+	private final int peers;
+	private final int seeds;
+	private final int basePort;
+	private final Path runDir;
+	private final CommonConfig commonConfig;
+	private final List<Process> processes = new ArrayList<>();
+
+	public LoopbackSwarm(int peers, int seeds, int basePort, Path runDir) {
+		this.peers = peers;
+		this.seeds = Math.max(1, Math.min(seeds, peers));
+		this.basePort = basePort;
+		this.runDir = runDir;
+		commonConfig = new CommonConfig();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: LoopbackSwarm <peers> [seeds] [base port] [run directory] [timeout seconds]");
+			System.exit(1);
+		}
+		LoopbackSwarm swarm = new LoopbackSwarm(Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 1,
+			args.length > 2 ? Integer.parseInt(args[2]) : 7001, Paths.get(args.length > 3 ? args[3] : "loopback").toAbsolutePath());
+		long timeoutSeconds = args.length > 4 ? Long.parseLong(args[4]) : 600;
+
+		swarm.prepare();
+		try {
+			swarm.launch();
+			swarm.awaitExit(timeoutSeconds);
+		} finally {
+			swarm.destroy();
+		}
+		swarm.report();
+	}
+
+	private String getPeerId(int peer) {
+		return String.valueOf(FIRST_PEER_ID + peer);
+	}
+
+	private Path getPeerDir(int peer) {
+		return runDir.resolve(getPeerId(peer));
+	}
+
+	private Path getPeerFile(int peer) {
+		return getPeerDir(peer).resolve(Constants.FILE_DIR_PREFIX_PATH + getPeerId(peer)).resolve(commonConfig.getFileName());
+	}
+
+	/**
+	 * Lays out one working directory per peer holding the shared configs and metainfo, plus the seed copies of
+	 * a generated file. The file content only depends on its size, so runs are repeatable.
+	 */
+	public void prepare() throws IOException {
+		deleteRecursively(runDir);
+		Files.createDirectories(runDir);
+
+		List<String> common = Files.readAllLines(Paths.get(System.getProperty(Constants.USER_DIR_PATH), Constants.COMMON_CFG_FILE_NAME))
+			.stream().filter(line -> OVERRIDDEN_KEYS.stream().noneMatch(line.trim()::startsWith)).collect(Collectors.toList());
+		common.add("WriteStats true");
+		List<String> peerInfo = new ArrayList<>();
+		for (int peer = 0; peer < peers; peer++)
+			peerInfo.add(getPeerId(peer) + " " + HOST_NAME + " " + (basePort + peer) + " " + (peer < seeds ? 1 : 0));
+
+		for (int peer = 0; peer < peers; peer++) {
+			Files.createDirectories(getPeerDir(peer));
+			Files.write(getPeerDir(peer).resolve(Constants.COMMON_CFG_FILE_NAME), common);
+			Files.write(getPeerDir(peer).resolve(Constants.PEER_INFO_CFG_FILE_NAME), peerInfo);
+		}
+
+		Path seedFile = getPeerFile(0);
+		Files.createDirectories(seedFile.getParent());
+		generateFile(seedFile, commonConfig.getFileSize());
+		for (int peer = 1; peer < seeds; peer++) {
+			Files.createDirectories(getPeerFile(peer).getParent());
+			Files.copy(seedFile, getPeerFile(peer));
+		}
+
+		Metainfo metainfo = Metainfo.build(seedFile, commonConfig.getFileName(), commonConfig.getPieceSize(),
+			commonConfig.getHashAlgorithm());
+		for (int peer = 0; peer < peers; peer++)
+			metainfo.write(getPeerDir(peer).resolve(commonConfig.getMetainfoFile()));
+		System.out.printf("Prepared %d peers (%d seeds) for %s, %d bytes in %d pieces, under %s%n", peers, seeds,
+			commonConfig.getFileName(), commonConfig.getFileSize(), commonConfig.getNumberOfPieces(), runDir);
+	}
+
+	private static void generateFile(Path path, long fileSize) throws IOException {
+		SplittableRandom random = new SplittableRandom(FILE_SEED);
+		byte[] chunk = new byte[Constants.IO_BUFFER_SIZE];
+		try (OutputStream outStream = Files.newOutputStream(path)) {
+			for (long written = 0; written < fileSize; written += chunk.length) {
+				random.nextBytes(chunk);
+				outStream.write(chunk, 0, (int) Math.min(chunk.length, fileSize - written));
+			}
+		}
+	}
+
+	/**
+	 * Starts the peers in PeerInfo.cfg order and waits for each to listen, since a peer only connects to the
+	 * peers listed before it and does not retry. Once all are up they are told to connect out together, so
+	 * early peers cannot finish and exit before the last ones have joined.
+	 */
+	public void launch() throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(Arrays.asList(System.getProperty(JVM_OPTIONS_PROPERTY, DEFAULT_JVM_OPTIONS).trim().split("\\s+")));
+		command.add("-cp");
+		command.add(Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+			.map(entry -> Paths.get(entry).toAbsolutePath().toString()).collect(Collectors.joining(File.pathSeparator)));
+		command.add(PeerProcess.class.getName());
+
+		long start = System.nanoTime();
+		for (int peer = 0; peer < peers; peer++) {
+			List<String> peerCommand = new ArrayList<>(command);
+			peerCommand.add(getPeerId(peer));
+			peerCommand.add(Constants.AWAIT_START_OPTION);
+			Process process = new ProcessBuilder(peerCommand).directory(getPeerDir(peer).toFile()).redirectErrorStream(true)
+				.redirectOutput(getPeerDir(peer).resolve(OUTPUT_FILE_NAME).toFile()).start();
+			processes.add(process);
+			awaitListening(peer, process);
+		}
+		for (Process process : processes) {
+			try (OutputStream outStream = process.getOutputStream()) {
+				outStream.write('\n');
+			}
+		}
+		System.out.printf("Launched %d peers in %d ms%n", peers, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+	private void awaitListening(int peer, Process process) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + LISTEN_TIMEOUT_MILLIS;
+		while (true) {
+			try (Socket socket = new Socket()) {
+				socket.connect(new InetSocketAddress(HOST_NAME, basePort + peer));
+				return;
+			} catch (IOException e) {
+				if (!process.isAlive())
+					throw new IOException("Peer [" + getPeerId(peer) + "] exited with [" + process.exitValue() + "], see "
+						+ getPeerDir(peer).resolve(OUTPUT_FILE_NAME));
+				if (System.currentTimeMillis() > deadline)
+					throw new IOException("Peer [" + getPeerId(peer) + "] is not listening on port [" + (basePort + peer) + "]");
+			}
+			Thread.sleep(LISTEN_POLL_MILLIS);
+		}
+	}
+
+	public void awaitExit(long timeoutSeconds) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		for (Process process : processes)
+			process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Kills the peers still running, e.g. after a timeout; their stats are missing from the report.
+	 */
+	public void destroy() {
+		long running = processes.stream().filter(Process::isAlive).count();
+		if (running > 0)
+			System.out.printf("Killing %d peers that did not finish%n", running);
+		processes.forEach(Process::destroyForcibly);
+	}
+
+	public void report() throws IOException {
+		List<SwarmStats> stats = new ArrayList<>();
+		for (int peer = 0; peer < peers; peer++) {
+			Path statsFile = Paths.get(getPeerFile(peer) + Constants.STATS_FILE_EXTENSION);
+			if (Files.exists(statsFile))
+				stats.add(SwarmStats.read(statsFile));
+		}
+
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(runDir.resolve(REPORT_FILE_NAME)))) {
+			writer.println("peer,time_to_complete_ms,pieces_downloaded,bytes_received,bytes_sent,duplicate_pieces,"
+				+ "duplicate_blocks,duplicate_bytes,hash_failures,overhead_bytes_per_piece");
+			for (SwarmStats peerStats : stats) {
+				writer.printf("%s,%d,%d,%d,%d,%d,%d,%d,%d,%.1f%n", peerStats.getPeerId(), peerStats.getTimeToComplete(),
+					peerStats.getPiecesDownloaded(), peerStats.getBytesReceived(), peerStats.getBytesSent(),
+					peerStats.getDuplicatePieces(), peerStats.getDuplicateBlocks(), peerStats.getDuplicateBytes(),
+					peerStats.getHashFailures(), peerStats.getOverheadPerPiece());
+			}
+		}
+
+		List<SwarmStats> leechers = stats.stream().filter(peerStats -> peerStats.getPiecesDownloaded() > 0)
+			.sorted(Comparator.comparingLong(SwarmStats::getTimeToComplete)).collect(Collectors.toList());
+		long firstStart = stats.stream().mapToLong(SwarmStats::getStartMillis).min().orElse(0);
+		long lastComplete = stats.stream().mapToLong(SwarmStats::getCompleteMillis).max().orElse(0);
+		long swarmMillis = Math.max(1, lastComplete - firstStart);
+		long pieces = leechers.stream().mapToLong(SwarmStats::getPiecesDownloaded).sum();
+		long pieceBytes = leechers.stream().mapToLong(SwarmStats::getPieceBytesDownloaded).sum();
+		long received = leechers.stream().mapToLong(SwarmStats::getBytesReceived).sum();
+
+		System.out.printf("Peers finished:            %d of %d%n", stats.size(), peers);
+		System.out.printf("Time to completion (ms):   min %d, p50 %d, p90 %d, max %d%n", percentile(leechers, 0),
+			percentile(leechers, 50), percentile(leechers, 90), percentile(leechers, 100));
+		System.out.printf("Swarm completion (ms):     %d%n", swarmMillis);
+		System.out.printf("Aggregate throughput:      %.2f MB/s (%d piece bytes)%n", pieceBytes / 1e6 / (swarmMillis / 1e3), pieceBytes);
+		System.out.printf("Duplicate pieces:          %d%n", leechers.stream().mapToLong(SwarmStats::getDuplicatePieces).sum());
+		System.out.printf("Duplicate blocks:          %d (%d bytes)%n", leechers.stream().mapToLong(SwarmStats::getDuplicateBlocks).sum(),
+			leechers.stream().mapToLong(SwarmStats::getDuplicateBytes).sum());
+		System.out.printf("Hash failures:             %d%n", leechers.stream().mapToLong(SwarmStats::getHashFailures).sum());
+		System.out.printf("Overhead per piece:        %.1f bytes%n", pieces == 0 ? 0.0 : (double) (received - pieceBytes) / pieces);
+		System.out.printf("Per-peer results:          %s%n", runDir.resolve(REPORT_FILE_NAME));
+	}
+
+	/**
+	 * Nearest-rank percentile of the time to completion; the list is sorted by it.
+	 */
+	private static long percentile(List<SwarmStats> sorted, int percent) {
+		if (sorted.isEmpty())
+			return 0;
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(0, rank - 1)).getTimeToComplete();
+	}
+
+	private static void deleteRecursively(Path path) throws IOException {
+		if (!Files.exists(path))
+			return;
+		try (Stream<Path> paths = Files.walk(path)) {
+			for (Path file : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.delete(file);
+		}
+	}
+}
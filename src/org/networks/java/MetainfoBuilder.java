@@ -0,0 +1,34 @@
+package org.networks.java;
+
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.helper.Constants;
+import org.networks.java.helper.Metainfo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Builds the metainfo file for a seed file using the piece size and hash algorithm from Common.cfg.
+ * Usage: {@code MetainfoBuilder <seed file> [output file]}
+ */
+public class MetainfoBuilder {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: MetainfoBuilder <seed file> [output file]");
+			System.exit(1);
+		}
+		CommonConfig commonConfig = new CommonConfig();
+		Path seedFile = Paths.get(args[0]);
+		Path output = args.length > 1 ? Paths.get(args[1])
+			: Paths.get(System.getProperty(Constants.USER_DIR_PATH), commonConfig.getMetainfoFile());
+
+		long start = System.nanoTime();
+		Metainfo metainfo = Metainfo.build(seedFile, commonConfig.getFileName(), commonConfig.getPieceSize(),
+			commonConfig.getHashAlgorithm());
+		metainfo.write(output);
+		System.out.printf("Hashed %d pieces (%d bytes) with %s in %d ms into %s%n", metainfo.getNumberOfPieces(),
+			metainfo.getFileSize(), metainfo.getHashAlgorithm(), (System.nanoTime() - start) / 1_000_000, output);
+	}
+}
@@ -3,16 +3,18 @@ package org.networks.java;
 import org.networks.java.helper.Constants;
 import org.networks.java.helper.PeerConfig;
 import org.networks.java.model.PeerInfo;
-import org.networks.java.service.Peer;
+import org.networks.java.service.Session;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
 public class PeerProcess {
 
 	public static void main(String[] args) throws IOException, InterruptedException {
-		assert args.length == 1;
+		assert args.length >= 1;
 		PeerInfo peerInfo = null;
 		List<PeerInfo> neighbours = new ArrayList<>();
 		for (PeerInfo info : new PeerConfig().getPeerInfo()) {
@@ -25,8 +27,14 @@ public class PeerProcess {
 		}
 		assert peerInfo != null;
 
-		Peer peer = new Peer(peerInfo, neighbours);
-        Thread.sleep(Constants.PROCESS_STALL_INTERVAL);
-		peer.start();
+		Session session = new Session(peerInfo, neighbours);
+		session.listen();
+		if (args.length > 1 && Constants.AWAIT_START_OPTION.equals(args[1])) {
+			// Launched by a harness that signals on stdin once every peer is listening.
+			new BufferedReader(new InputStreamReader(System.in)).readLine();
+		} else {
+			Thread.sleep(Constants.PROCESS_STALL_INTERVAL);
+		}
+		session.start();
 	}
 }
@@ -0,0 +1,177 @@
+package org.networks.java;
+
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.simulation.SimulatedPeer;
+import org.networks.java.simulation.Simulation;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates a swarm under a virtual clock to compare choking and piece selection settings offline. Swarm
+ * settings come from the Common.cfg in the current directory; the same arguments always give the same run.
+ * Upload rates are spread uniformly between half and one and a half times the given rate, seeds get it
+ * exactly. Per-peer results are written to simulation.csv.
+ * Usage: {@code SwarmSimulator <peers> [seeds] [neighbours] [upload bytes/s] [download bytes/s] [latency ms]
+ * [random seed] [max seconds]}
+ */
+public class SwarmSimulator {
+
+	private static final String REPORT_FILE_NAME = "simulation.csv";
+	private static final int HISTOGRAM_BUCKETS = 10;
+	private static final int HISTOGRAM_WIDTH = 50;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SwarmSimulator <peers> [seeds] [neighbours] [upload bytes/s] [download bytes/s] "
+				+ "[latency ms] [random seed] [max seconds]");
+			System.exit(1);
+		}
+		int peers = Integer.parseInt(args[0]);
+		int seeds = Math.max(1, Math.min(peers, args.length > 1 ? Integer.parseInt(args[1]) : 1));
+		int neighbours = Math.min(peers - 1, args.length > 2 ? Integer.parseInt(args[2]) : 50);
+		long uploadRate = args.length > 3 ? Long.parseLong(args[3]) : 1_000_000L;
+		long downloadRate = args.length > 4 ? Long.parseLong(args[4]) : 10_000_000L;
+		long latencyNanos = TimeUnit.MILLISECONDS.toNanos(args.length > 5 ? Long.parseLong(args[5]) : 25);
+		long randomSeed = args.length > 6 ? Long.parseLong(args[6]) : 1L;
+		long maxNanos = TimeUnit.SECONDS.toNanos(args.length > 7 ? Long.parseLong(args[7]) : 86_400);
+
+		CommonConfig commonConfig = new CommonConfig();
+		Simulation simulation = new Simulation();
+		Random random = new Random(randomSeed);
+
+		List<SimulatedPeer> swarm = new ArrayList<>();
+		for (int i = 0; i < peers; i++) {
+			boolean seed = i < seeds;
+			long peerUploadRate = seed ? uploadRate : uploadRate / 2 + (long) (random.nextDouble() * uploadRate);
+			swarm.add(new SimulatedPeer(simulation, commonConfig, String.valueOf(1001 + i), seed, peerUploadRate, downloadRate,
+				latencyNanos, new Random(random.nextLong())));
+		}
+		connectRandomly(swarm, neighbours, random);
+
+		int[] incompletePeers = {peers - seeds};
+		long unchokingPeriod = TimeUnit.SECONDS.toNanos(commonConfig.getUnchokingInterval());
+		long optimisticPeriod = TimeUnit.SECONDS.toNanos(commonConfig.getOptimisticUnchokingInterval());
+		for (SimulatedPeer peer : swarm) {
+			peer.start((long) (random.nextDouble() * unchokingPeriod), (long) (random.nextDouble() * optimisticPeriod),
+				() -> incompletePeers[0]--);
+		}
+
+		long start = System.nanoTime();
+		simulation.run(maxNanos, () -> incompletePeers[0] == 0);
+		long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		System.out.printf("Simulated %d peers (%d seeds, %d neighbours each) for %s, %d pieces of %d bytes%n", peers, seeds,
+			neighbours, commonConfig.getFileName(), commonConfig.getNumberOfPieces(), commonConfig.getPieceSize());
+		System.out.printf("Choking: %s, seeds %s, %d preferred neighbours, unchoking every %d s, optimistic every %d s%n",
+			commonConfig.getChokingStrategy(), commonConfig.getSeedChokingStrategy(), commonConfig.getNumberOfPreferredNeighbors(),
+			commonConfig.getUnchokingInterval(), commonConfig.getOptimisticUnchokingInterval());
+		System.out.printf("Virtual time: %.1f s, %d events in %d ms%n", simulation.getNow() / 1e9, simulation.getProcessedEvents(),
+			wallMillis);
+		report(swarm, simulation.getNow());
+	}
+
+	/**
+	 * Links every peer to about {@code neighbours} others picked at random, as a tracker handing out a random
+	 * subset of the swarm would. With enough neighbours this is the full mesh of a PeerInfo.cfg swarm.
+	 */
+	private static void connectRandomly(List<SimulatedPeer> swarm, int neighbours, Random random) {
+		List<Set<Integer>> links = new ArrayList<>();
+		swarm.forEach(peer -> links.add(new HashSet<>()));
+		for (int i = 0; i < swarm.size(); i++) {
+			if (neighbours >= swarm.size() - 1) {
+				for (int j = i + 1; j < swarm.size(); j++)
+					link(swarm, links, i, j);
+				continue;
+			}
+			for (int attempt = 0; links.get(i).size() < neighbours && attempt < 4 * neighbours; attempt++) {
+				int j = random.nextInt(swarm.size());
+				if (j != i && links.get(j).size() < neighbours && !links.get(i).contains(j))
+					link(swarm, links, i, j);
+			}
+		}
+	}
+
+	private static void link(List<SimulatedPeer> swarm, List<Set<Integer>> links, int i, int j) {
+		links.get(i).add(j);
+		links.get(j).add(i);
+		SimulatedPeer.connect(swarm.get(i), swarm.get(j));
+	}
+
+	private static void report(List<SimulatedPeer> swarm, long endNanos) throws IOException {
+		double[] completionSeconds = swarm.stream().filter(peer -> !peer.isSeed() && peer.isComplete())
+			.mapToDouble(peer -> peer.getCompleteNanos() / 1e9).sorted().toArray();
+		long leechers = swarm.stream().filter(peer -> !peer.isSeed()).count();
+		System.out.printf("Completed: %d of %d leechers%n", completionSeconds.length, leechers);
+		if (completionSeconds.length > 0) {
+			System.out.printf("Completion time (s): mean %.1f, min %.1f, p10 %.1f, p25 %.1f, p50 %.1f, p75 %.1f, p90 %.1f, "
+					+ "p99 %.1f, max %.1f%n", Arrays.stream(completionSeconds).average().orElse(0), completionSeconds[0],
+				percentile(completionSeconds, 10), percentile(completionSeconds, 25), percentile(completionSeconds, 50),
+				percentile(completionSeconds, 75), percentile(completionSeconds, 90), percentile(completionSeconds, 99),
+				completionSeconds[completionSeconds.length - 1]);
+			printHistogram(completionSeconds);
+		}
+
+		double[] leecherUtilization = swarm.stream().filter(peer -> !peer.isSeed())
+			.mapToDouble(peer -> utilization(peer, endNanos)).sorted().toArray();
+		double swarmBusy = swarm.stream().mapToDouble(peer -> utilization(peer, endNanos)).sum();
+		double seedBusy = swarm.stream().filter(SimulatedPeer::isSeed).mapToDouble(peer -> utilization(peer, endNanos)).average()
+			.orElse(0);
+		System.out.printf("Upload utilization: swarm %.1f%%, seeds %.1f%%", 100 * swarmBusy / swarm.size(), 100 * seedBusy);
+		if (leecherUtilization.length > 0) {
+			System.out.printf(", leechers mean %.1f%%, p10 %.1f%%, p50 %.1f%%, p90 %.1f%%",
+				100 * Arrays.stream(leecherUtilization).average().orElse(0), 100 * percentile(leecherUtilization, 10),
+				100 * percentile(leecherUtilization, 50), 100 * percentile(leecherUtilization, 90));
+		}
+		System.out.println();
+		System.out.printf("Duplicate pieces: %d%n", swarm.stream().mapToLong(SimulatedPeer::getDuplicatePieces).sum());
+
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(REPORT_FILE_NAME)))) {
+			writer.println("peer,seed,neighbours,upload_rate,download_rate,completion_s,uploaded_bytes,upload_utilization,"
+				+ "duplicate_pieces");
+			for (SimulatedPeer peer : swarm) {
+				writer.printf("%s,%b,%d,%d,%d,%.3f,%d,%.4f,%d%n", peer.getPeerId(), peer.isSeed(), peer.getNumberOfNeighbours(),
+					peer.getUploadRate(), peer.getDownloadRate(), peer.getCompleteNanos() / 1e9, peer.getUploadedBytes(),
+					utilization(peer, endNanos), peer.getDuplicatePieces());
+			}
+		}
+		System.out.printf("Per-peer results: %s%n", Paths.get(REPORT_FILE_NAME).toAbsolutePath());
+	}
+
+	/**
+	 * Share of the run the peer's uplink spent sending pieces.
+	 */
+	private static double utilization(SimulatedPeer peer, long endNanos) {
+		return endNanos == 0 ? 0 : Math.min(1.0, (double) peer.getUploadBusyNanos() / endNanos);
+	}
+
+	/**
+	 * Nearest-rank percentile of sorted values.
+	 */
+	private static double percentile(double[] sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static void printHistogram(double[] sorted) {
+		double min = sorted[0];
+		double width = Math.max((sorted[sorted.length - 1] - min) / HISTOGRAM_BUCKETS, 1e-9);
+		int[] counts = new int[HISTOGRAM_BUCKETS];
+		for (double value : sorted)
+			counts[Math.min(HISTOGRAM_BUCKETS - 1, (int) ((value - min) / width))]++;
+		int maxCount = Arrays.stream(counts).max().orElse(1);
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+			System.out.printf("  %8.1f - %8.1f s %7d %s%n", min + i * width, min + (i + 1) * width, counts[i],
+				"#".repeat((int) Math.ceil((double) counts[i] * HISTOGRAM_WIDTH / maxCount)));
+		}
+	}
+}
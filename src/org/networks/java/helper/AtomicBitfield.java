@@ -0,0 +1,121 @@
+package org.networks.java.helper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-length bitfield over 64-bit words. Single-bit reads and updates are lock-free, the cardinality is
+ * kept alongside so completion checks are O(1), and the bulk queries work a word at a time.
+ * The byte layout matches {@link java.util.BitSet#toByteArray()} so it can go on the wire as a BITFIELD.
+ */
+public class AtomicBitfield {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private static final long WORD_MASK = 0xFFFFFFFFFFFFFFFFL;
+
+    private final int length;
+    private final AtomicLongArray words;
+    private final AtomicInteger cardinality;
+
+    public AtomicBitfield(int length) {
+        this.length = length;
+        words = new AtomicLongArray(wordIndex(length - 1) + 1);
+        cardinality = new AtomicInteger();
+    }
+
+    public static AtomicBitfield valueOf(byte[] bytes, int length) {
+        AtomicBitfield bitfield = new AtomicBitfield(length);
+        int count = 0;
+        for (int i = 0; i < bitfield.words.length(); i++) {
+            long word = 0;
+            for (int b = 0; b < Long.BYTES && i * Long.BYTES + b < bytes.length; b++)
+                word |= (bytes[i * Long.BYTES + b] & 0xFFL) << (b * Byte.SIZE);
+            word &= bitfield.getWordMask(i);
+            bitfield.words.set(i, word);
+            count += Long.bitCount(word);
+        }
+        bitfield.cardinality.set(count);
+        return bitfield;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean get(int bitIndex) {
+        return (words.get(wordIndex(bitIndex)) & (1L << bitIndex)) != 0;
+    }
+
+    public boolean set(int bitIndex) {
+        int wordIndex = wordIndex(bitIndex);
+        long mask = 1L << bitIndex;
+        long word;
+        do {
+            word = words.get(wordIndex);
+            if ((word & mask) != 0)
+                return false;
+        } while (!words.compareAndSet(wordIndex, word, word | mask));
+        cardinality.incrementAndGet();
+        return true;
+    }
+
+    public void setAll() {
+        for (int i = 0; i < words.length(); i++)
+            words.set(i, getWordMask(i));
+        cardinality.set(length);
+    }
+
+    public int cardinality() {
+        return cardinality.get();
+    }
+
+    public boolean isEmpty() {
+        return cardinality.get() == 0;
+    }
+
+    public boolean isComplete() {
+        return cardinality.get() == length;
+    }
+
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex >= length)
+            return -1;
+        int wordIndex = wordIndex(fromIndex);
+        long word = words.get(wordIndex) & (WORD_MASK << fromIndex);
+        while (true) {
+            if (word != 0)
+                return wordIndex * Long.SIZE + Long.numberOfTrailingZeros(word);
+            if (++wordIndex == words.length())
+                return -1;
+            word = words.get(wordIndex);
+        }
+    }
+
+    /**
+     * Returns whether this bitfield has a bit set that {@code other} does not, i.e. whether
+     * {@code this & ~other} is non-empty.
+     */
+    public boolean intersectsAndNot(AtomicBitfield other) {
+        for (int i = 0; i < words.length(); i++) {
+            if ((words.get(i) & ~other.words.get(i)) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[(length + Byte.SIZE - 1) / Byte.SIZE];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (words.get(i / Long.BYTES) >>> ((i % Long.BYTES) * Byte.SIZE));
+        return bytes;
+    }
+
+    private long getWordMask(int wordIndex) {
+        int bitsInWord = length - wordIndex * Long.SIZE;
+        return bitsInWord >= Long.SIZE ? WORD_MASK : (1L << bitsInWord) - 1;
+    }
+
+    private static int wordIndex(int bitIndex) {
+        return bitIndex >> ADDRESS_BITS_PER_WORD;
+    }
+}
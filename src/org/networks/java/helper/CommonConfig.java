@@ -1,6 +1,9 @@
 package org.networks.java.helper;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 public class CommonConfig {
@@ -11,6 +14,44 @@ public class CommonConfig {
 	private static final String FILE_NAME = "FileName";
 	private static final String FILE_SIZE = "FileSize";
 	private static final String PIECE_SIZE = "PieceSize";
+	private static final String WRITE_QUEUE_DEPTH = "WriteQueueDepth";
+	private static final String FSYNC_POLICY = "FsyncPolicy";
+	private static final String TRANSPORT = "Transport";
+	private static final String EVENT_LOOP_THREADS = "EventLoopThreads";
+	private static final String THREAD_MODE = "ThreadMode";
+	private static final String MAX_CONNECTION_THREADS = "MaxConnectionThreads";
+	private static final String BLOCK_SIZE = "BlockSize";
+	private static final String PIPELINE_DEPTH = "PipelineDepth";
+	private static final String MAX_PIPELINE_DEPTH = "MaxPipelineDepth";
+	private static final String ADAPTIVE_PIPELINE = "AdaptivePipeline";
+	private static final String ENDGAME_BLOCKS = "EndgameBlocks";
+	private static final String METAINFO_FILE = "MetainfoFile";
+	private static final String HASH_ALGORITHM = "HashAlgorithm";
+	private static final String ALLOW_UNVERIFIED_PIECES = "AllowUnverifiedPieces";
+	private static final String METAINFO_WAIT_SECONDS = "MetainfoWaitSeconds";
+	private static final String VERIFY_THREADS = "VerifyThreads";
+	private static final String VERIFY_QUEUE_DEPTH = "VerifyQueueDepth";
+	private static final String RESUME_SPOT_CHECK_PERCENT = "ResumeSpotCheckPercent";
+	private static final String RATE_WINDOW_SECONDS = "RateWindowSeconds";
+	private static final String MAX_UPLOAD_RATE = "MaxUploadRate";
+	private static final String MAX_DOWNLOAD_RATE = "MaxDownloadRate";
+	private static final String MAX_PEER_UPLOAD_RATE = "MaxPeerUploadRate";
+	private static final String MAX_PEER_DOWNLOAD_RATE = "MaxPeerDownloadRate";
+	private static final String RATE_LIMIT_RELOAD_INTERVAL = "RateLimitReloadInterval";
+	private static final String WRITE_COALESCE_BYTES = "WriteCoalesceBytes";
+	private static final String SUPPRESS_REDUNDANT_HAVES = "SuppressRedundantHaves";
+	private static final String SEND_QUEUE_BYTES = "SendQueueBytes";
+	private static final String CHOKING_STRATEGY = "ChokingStrategy";
+	private static final String SEED_CHOKING_STRATEGY = "SeedChokingStrategy";
+	private static final String SNUB_TIMEOUT = "SnubTimeout";
+	private static final String SWARM_CONFIGS = "SwarmConfigs";
+	private static final String MAX_CONNECTIONS = "MaxConnections";
+	private static final String WRITE_STATS = "WriteStats";
+
+	/**
+	 * Keys that identify a swarm's file; a swarm config never inherits these from Common.cfg.
+	 */
+	private static final List<String> SWARM_KEYS = Arrays.asList(FILE_NAME, FILE_SIZE, PIECE_SIZE, METAINFO_FILE);
 
 	private final Properties properties;
 
@@ -30,22 +71,199 @@ public class CommonConfig {
 		return properties.getProperty(FILE_NAME);
 	}
 
-	public int getFileSize() {
-		return Integer.parseInt(properties.getProperty(FILE_SIZE));
+	public long getFileSize() {
+		return Long.parseLong(properties.getProperty(FILE_SIZE).trim());
 	}
 
 	public int getPieceSize() {
 		return Integer.parseInt(properties.getProperty(PIECE_SIZE));
 	}
 
+	/**
+	 * Pieces are indexed by int; a file needing more pieces than that must use a larger PieceSize.
+	 */
+	public int getNumberOfPieces() {
+		return Math.toIntExact((getFileSize() + getPieceSize() - 1) / getPieceSize());
+	}
+
+	public int getWriteQueueDepth() {
+		return getIntProperty(WRITE_QUEUE_DEPTH, Constants.DEFAULT_WRITE_QUEUE_DEPTH);
+	}
+
+	public Constants.FsyncPolicy getFsyncPolicy() {
+		return Constants.FsyncPolicy.valueOf(properties.getProperty(FSYNC_POLICY, Constants.FsyncPolicy.ON_CLOSE.name()));
+	}
+
+	public Constants.Transport getTransport() {
+		return Constants.Transport.valueOf(properties.getProperty(TRANSPORT, Constants.Transport.NIO.name()));
+	}
+
+	public int getEventLoopThreads() {
+		return getIntProperty(EVENT_LOOP_THREADS, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public Constants.ThreadMode getThreadMode() {
+		return Constants.ThreadMode.valueOf(properties.getProperty(THREAD_MODE, Constants.ThreadMode.PLATFORM.name()));
+	}
+
+	public int getMaxConnectionThreads() {
+		return getIntProperty(MAX_CONNECTION_THREADS, Constants.DEFAULT_MAX_CONNECTION_THREADS);
+	}
+
+	public int getBlockSize() {
+		return getIntProperty(BLOCK_SIZE, Constants.DEFAULT_BLOCK_SIZE);
+	}
+
+	public int getPipelineDepth() {
+		return getIntProperty(PIPELINE_DEPTH, Constants.DEFAULT_PIPELINE_DEPTH);
+	}
+
+	public int getMaxPipelineDepth() {
+		return getIntProperty(MAX_PIPELINE_DEPTH, Constants.DEFAULT_MAX_PIPELINE_DEPTH);
+	}
+
+	public boolean isAdaptivePipeline() {
+		return Boolean.parseBoolean(properties.getProperty(ADAPTIVE_PIPELINE, "true").trim());
+	}
+
+	/**
+	 * Endgame starts once every missing piece is requested and at most this many blocks are still in flight.
+	 */
+	public int getEndgameBlocks() {
+		return getIntProperty(ENDGAME_BLOCKS, Constants.DEFAULT_ENDGAME_BLOCKS);
+	}
+
+	public String getMetainfoFile() {
+		return properties.getProperty(METAINFO_FILE, getFileName() + Constants.METAINFO_FILE_EXTENSION).trim();
+	}
+
+	public String getHashAlgorithm() {
+		return properties.getProperty(HASH_ALGORITHM, Constants.DEFAULT_HASH_ALGORITHM).trim();
+	}
+
+	/**
+	 * Lets a leecher start without a metainfo file matching the swarm, storing whatever its neighbours send.
+	 */
+	public boolean isAllowUnverifiedPieces() {
+		return Boolean.parseBoolean(properties.getProperty(ALLOW_UNVERIFIED_PIECES, "false").trim());
+	}
+
+	/**
+	 * How long a leecher that needs the metainfo file waits for a seed started alongside it to write one.
+	 */
+	public int getMetainfoWaitSeconds() {
+		return getIntProperty(METAINFO_WAIT_SECONDS, Constants.DEFAULT_METAINFO_WAIT_SECONDS);
+	}
+
+	public int getVerifyThreads() {
+		return getIntProperty(VERIFY_THREADS, Runtime.getRuntime().availableProcessors());
+	}
+
+	public int getVerifyQueueDepth() {
+		return getIntProperty(VERIFY_QUEUE_DEPTH, Constants.DEFAULT_VERIFY_QUEUE_DEPTH);
+	}
+
+	public int getResumeSpotCheckPercent() {
+		return getIntProperty(RESUME_SPOT_CHECK_PERCENT, Constants.DEFAULT_RESUME_SPOT_CHECK_PERCENT);
+	}
+
+	public int getRateWindowSeconds() {
+		return getIntProperty(RATE_WINDOW_SECONDS, Constants.DEFAULT_RATE_WINDOW_SECONDS);
+	}
+
+	public long getMaxUploadRate() {
+		return getLongProperty(MAX_UPLOAD_RATE, 0);
+	}
+
+	public long getMaxDownloadRate() {
+		return getLongProperty(MAX_DOWNLOAD_RATE, 0);
+	}
+
+	public long getMaxPeerUploadRate() {
+		return getLongProperty(MAX_PEER_UPLOAD_RATE, 0);
+	}
+
+	public long getMaxPeerDownloadRate() {
+		return getLongProperty(MAX_PEER_DOWNLOAD_RATE, 0);
+	}
+
+	public int getRateLimitReloadInterval() {
+		return getIntProperty(RATE_LIMIT_RELOAD_INTERVAL, Constants.DEFAULT_RATE_LIMIT_RELOAD_INTERVAL);
+	}
+
+	public int getWriteCoalesceBytes() {
+		return getIntProperty(WRITE_COALESCE_BYTES, Constants.DEFAULT_WRITE_COALESCE_BYTES);
+	}
+
+	public boolean isSuppressRedundantHaves() {
+		return Boolean.parseBoolean(properties.getProperty(SUPPRESS_REDUNDANT_HAVES, "true").trim());
+	}
+
+	public int getSendQueueBytes() {
+		return getIntProperty(SEND_QUEUE_BYTES, Constants.DEFAULT_SEND_QUEUE_BYTES);
+	}
+
+	public Constants.ChokingStrategy getChokingStrategy() {
+		return Constants.ChokingStrategy.valueOf(properties.getProperty(CHOKING_STRATEGY, Constants.ChokingStrategy.TIT_FOR_TAT.name()).trim());
+	}
+
+	public Constants.SeedChokingStrategy getSeedChokingStrategy() {
+		return Constants.SeedChokingStrategy.valueOf(properties.getProperty(SEED_CHOKING_STRATEGY, Constants.SeedChokingStrategy.UPLOAD_RATE.name()).trim());
+	}
+
+	public int getSnubTimeout() {
+		return getIntProperty(SNUB_TIMEOUT, Constants.DEFAULT_SNUB_TIMEOUT_SECONDS);
+	}
+
+	public List<String> getSwarmConfigs() {
+		String value = properties.getProperty(SWARM_CONFIGS, "").trim();
+		return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split("[\\s,]+"));
+	}
+
+	public int getMaxConnections() {
+		return getIntProperty(MAX_CONNECTIONS, Constants.DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Whether each swarm writes its transfer counters next to the downloaded file when it shuts down.
+	 */
+	public boolean isWriteStats() {
+		return Boolean.parseBoolean(properties.getProperty(WRITE_STATS, "false").trim());
+	}
+
+	private long getLongProperty(String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	private int getIntProperty(String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
 	public CommonConfig() {
 		this(Constants.COMMON_CFG_FILE_NAME);
 	}
 
 	public CommonConfig(String fileName) {
+		properties = new Properties();
+		load(fileName);
+	}
+
+	/**
+	 * Config of an additional swarm: everything but the swarm's own file keys falls back to {@code defaults}.
+	 */
+	public CommonConfig(CommonConfig defaults, String fileName) {
+		properties = new Properties();
+		properties.putAll(defaults.properties);
+		SWARM_KEYS.forEach(properties::remove);
+		properties.remove(SWARM_CONFIGS);
+		load(fileName);
+	}
+
+	private void load(String fileName) {
 		String filePath = System.getProperty(Constants.USER_DIR_PATH) + File.separator + fileName;
 		final File cfgFile = new File(filePath);
-		properties = new Properties();
 		try (final InputStream inStream = new DataInputStream(new FileInputStream(cfgFile))){
 			properties.load(inStream);
 		} catch (IOException e) {
@@ -61,7 +279,40 @@ public class CommonConfig {
 			", OptimisticUnchokingInterval=" + getOptimisticUnchokingInterval() +
 			", FileName=" + getFileName() +
 			", FileSize=" + getFileSize() +
-			", PieceSize=" + getPieceSize()+
+			", PieceSize=" + getPieceSize() +
+			", WriteQueueDepth=" + getWriteQueueDepth() +
+			", FsyncPolicy=" + getFsyncPolicy() +
+			", Transport=" + getTransport() +
+			", EventLoopThreads=" + getEventLoopThreads() +
+			", ThreadMode=" + getThreadMode() +
+			", MaxConnectionThreads=" + getMaxConnectionThreads() +
+			", BlockSize=" + getBlockSize() +
+			", PipelineDepth=" + getPipelineDepth() +
+			", MaxPipelineDepth=" + getMaxPipelineDepth() +
+			", AdaptivePipeline=" + isAdaptivePipeline() +
+			", EndgameBlocks=" + getEndgameBlocks() +
+			", MetainfoFile=" + getMetainfoFile() +
+			", HashAlgorithm=" + getHashAlgorithm() +
+			", AllowUnverifiedPieces=" + isAllowUnverifiedPieces() +
+			", MetainfoWaitSeconds=" + getMetainfoWaitSeconds() +
+			", VerifyThreads=" + getVerifyThreads() +
+			", VerifyQueueDepth=" + getVerifyQueueDepth() +
+			", ResumeSpotCheckPercent=" + getResumeSpotCheckPercent() +
+			", RateWindowSeconds=" + getRateWindowSeconds() +
+			", MaxUploadRate=" + getMaxUploadRate() +
+			", MaxDownloadRate=" + getMaxDownloadRate() +
+			", MaxPeerUploadRate=" + getMaxPeerUploadRate() +
+			", MaxPeerDownloadRate=" + getMaxPeerDownloadRate() +
+			", RateLimitReloadInterval=" + getRateLimitReloadInterval() +
+			", WriteCoalesceBytes=" + getWriteCoalesceBytes() +
+			", SuppressRedundantHaves=" + isSuppressRedundantHaves() +
+			", SendQueueBytes=" + getSendQueueBytes() +
+			", ChokingStrategy=" + getChokingStrategy() +
+			", SeedChokingStrategy=" + getSeedChokingStrategy() +
+			", SnubTimeout=" + getSnubTimeout() +
+			", SwarmConfigs=" + getSwarmConfigs() +
+			", MaxConnections=" + getMaxConnections() +
+			", WriteStats=" + isWriteStats() +
 			'}';
 	}
 }
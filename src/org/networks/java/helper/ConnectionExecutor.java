@@ -0,0 +1,62 @@
+package org.networks.java.helper;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs connection tasks (accept loop, socket readers and writers) on their own thread, either platform or
+ * virtual, while bounding how many of them may be alive at once.
+ */
+public class ConnectionExecutor implements Executor {
+
+    private final Semaphore permits;
+    private final ThreadFactory threadFactory;
+    private final Constants.ThreadMode threadMode;
+
+    public Constants.ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    public ConnectionExecutor(final Constants.ThreadMode requestedMode, final int maxThreads, final String namePrefix) {
+        permits = new Semaphore(maxThreads);
+        ThreadFactory virtualThreadFactory = requestedMode == Constants.ThreadMode.VIRTUAL ? getVirtualThreadFactory() : null;
+        if (virtualThreadFactory != null) {
+            threadMode = Constants.ThreadMode.VIRTUAL;
+            threadFactory = virtualThreadFactory;
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            threadMode = Constants.ThreadMode.PLATFORM;
+            threadFactory = task -> new Thread(task, namePrefix + threadCount.getAndIncrement());
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        permits.acquireUninterruptibly();
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }).start();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static ThreadFactory getVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
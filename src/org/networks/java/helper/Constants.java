@@ -4,6 +4,7 @@ public class Constants {
 
     public final static int PROCESS_EXIT_CODE = 0;
     public final static int PROCESS_STALL_INTERVAL = 5000;
+    public final static String AWAIT_START_OPTION = "--await-start";
 
     public final static long SEC_TO_MILLI_SEC = 1000L;
 
@@ -13,6 +14,8 @@ public class Constants {
     public final static int MSG_LEN_LEN = 4;
     public final static int MSG_TYPE_LEN = 1;
     public final static int PIECE_INDEX_PAYLOAD_LEN = 4;
+    public final static int BLOCK_OFFSET_PAYLOAD_LEN = 4;
+    public final static int BLOCK_LENGTH_PAYLOAD_LEN = 4;
 
     public final static int HANDSHAKE_ZERO_BITS_LEN = 10;
     public final static int HANDSHAKE_MSG_LEN = 32;
@@ -23,8 +26,60 @@ public class Constants {
     public static final String USER_DIR_PATH = "user.dir";
     public static final String FILE_DIR_PREFIX_PATH = "peer_";
 
+    public static final String METAINFO_FILE_EXTENSION = ".meta";
+    public static final String RESUME_FILE_EXTENSION = ".resume";
+    public static final String STATS_FILE_EXTENSION = ".stats";
+
     public static final String LOG_FILE_PATH = "log_peer_";
     public static final String LOG_FILE_EXTENSION = ".log";
+    public final static int LOG_QUEUE_CAPACITY = 8192;
+
+    public final static int IO_BUFFER_SIZE = 64 * 1024;
+    public final static int MAX_POOLED_IO_BUFFERS = 256;
+
+    public final static int DEFAULT_WRITE_QUEUE_DEPTH = 64;
+    public final static int DEFAULT_MAX_CONNECTION_THREADS = 32768;
+    public final static int DEFAULT_BLOCK_SIZE = 16384;
+    public final static int DEFAULT_PIPELINE_DEPTH = 5;
+    public final static int DEFAULT_MAX_PIPELINE_DEPTH = 64;
+    public final static int DEFAULT_ENDGAME_BLOCKS = 16;
+    public final static String DEFAULT_HASH_ALGORITHM = "SHA-256";
+    public final static int DEFAULT_METAINFO_WAIT_SECONDS = 300;
+    public final static int METAINFO_POLL_INTERVAL_MILLIS = 500;
+    public final static int DEFAULT_VERIFY_QUEUE_DEPTH = 16;
+    public final static int DEFAULT_RESUME_SPOT_CHECK_PERCENT = 10;
+    public final static int DEFAULT_RATE_WINDOW_SECONDS = 20;
+    public final static int DEFAULT_RATE_LIMIT_RELOAD_INTERVAL = 5;
+    public final static int DEFAULT_WRITE_COALESCE_BYTES = IO_BUFFER_SIZE;
+    public final static int DEFAULT_SEND_QUEUE_BYTES = 1024 * 1024;
+    public final static int DEFAULT_SNUB_TIMEOUT_SECONDS = 60;
+    public final static int DEFAULT_MAX_CONNECTIONS = 1024;
+
+    public enum Transport {
+        BLOCKING,
+        NIO
+    }
+
+    public enum ThreadMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    public enum FsyncPolicy {
+        NEVER,
+        ON_CLOSE,
+        PER_BATCH
+    }
+
+    public enum ChokingStrategy {
+        TIT_FOR_TAT,
+        ANTI_SNUB
+    }
+
+    public enum SeedChokingStrategy {
+        UPLOAD_RATE,
+        ROUND_ROBIN
+    }
 
     public enum MessageType {
         CHOKE("CHOKE"),
@@ -34,12 +89,15 @@ public class Constants {
         HAVE("HAVE"),
         BITFIELD("BITFIELD"),
         REQUEST("REQUEST"),
-        PIECE("PIECE");
+        PIECE("PIECE"),
+        CANCEL("CANCEL");
+
+        private static final MessageType[] VALUES = values();
 
         private String name;
 
         public static MessageType getMessageValue(int typeIdx) {
-            return MessageType.values()[typeIdx];
+            return VALUES[typeIdx];
         }
 
         MessageType(String name) {
@@ -3,10 +3,13 @@ package org.networks.java.helper;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class FileDownloader {
@@ -17,7 +20,9 @@ public class FileDownloader {
 
     private final RandomAccessFile file;
 
-    private final Map<Integer, byte[]> filePieces;
+    private final MappedPieceStore pieceStore;
+    private final WriteBehindWriter writer;
+    private final ResumeFile resumeFile;
 
     private final CommonConfig commonConfig;
 
@@ -27,18 +32,41 @@ public class FileDownloader {
         this.isReadOnlyFile = isReadOnlyFile;
         this.commonConfig = commonConfig;
         lock = new ReentrantReadWriteLock();
-        filePieces = new HashMap<>();
         String fileDirPath = Constants.FILE_DIR_PREFIX_PATH + peerID;
         if (!Files.exists(Paths.get(fileDirPath)))
             new File(fileDirPath).mkdir();
         file = getFile(this.filePath, isReadOnlyFile, commonConfig);
+        pieceStore = new MappedPieceStore(file.getChannel(), commonConfig.getFileSize(), commonConfig.getPieceSize());
+        resumeFile = isReadOnlyFile ? null : new ResumeFile(Paths.get(this.filePath + Constants.RESUME_FILE_EXTENSION),
+                commonConfig.getFileSize(), commonConfig.getPieceSize(), commonConfig.getNumberOfPieces());
+        writer = isReadOnlyFile ? null : new WriteBehindWriter(file.getChannel(), commonConfig.getPieceSize(),
+                commonConfig.getWriteQueueDepth(), commonConfig.getFsyncPolicy(), resumeFile);
+    }
+
+    /**
+     * Returns the pieces recorded in the resume file. The given percentage of them, picked at random, is
+     * re-read and checked against the recorded CRC32C in parallel; pieces that fail are dropped.
+     */
+    public BitSet getResumedPieces(int spotCheckPercent) throws IOException {
+        if (resumeFile == null)
+            return new BitSet();
+        BitSet resumedPieces = resumeFile.getResumedPieces();
+        int[] spotChecked = resumedPieces.stream()
+                .filter(i -> ThreadLocalRandom.current().nextInt(100) < spotCheckPercent).toArray();
+        int[] corrupted = IntStream.of(spotChecked).parallel()
+                .filter(i -> ResumeFile.checksum(pieceStore.readPiece(i)) != resumeFile.getChecksum(i)).toArray();
+        for (int pieceIndex : corrupted) {
+            resumedPieces.clear(pieceIndex);
+            resumeFile.clear(pieceIndex);
+        }
+        return resumedPieces;
     }
 
     private RandomAccessFile getFile(final String filePath, final boolean readOnly,
                                      final CommonConfig commonConfig) throws IOException {
         final RandomAccessFile randomAccessFile;
         if (readOnly) {
-            randomAccessFile = readFile();
+            randomAccessFile = new RandomAccessFile(filePath, "r");
         } else {
             randomAccessFile = new RandomAccessFile(filePath, "rw");
             randomAccessFile.setLength(commonConfig.getFileSize());
@@ -46,45 +74,59 @@ public class FileDownloader {
         return randomAccessFile;
     }
 
-    private RandomAccessFile readFile() throws IOException {
-        RandomAccessFile file = new RandomAccessFile(filePath, "r");
-        int numberOfPieces = (int) Math.ceil(commonConfig.getFileSize() / (float) commonConfig.getPieceSize());
-        for (int i = 0; i < numberOfPieces; i++) {
-            int remainingSize = Math.min(commonConfig.getFileSize() - i * commonConfig.getPieceSize(), commonConfig.getPieceSize());
-            byte[] piece = new byte[remainingSize];
-            file.seek((long) i * commonConfig.getPieceSize());
-            file.readFully(piece);
-            filePieces.put(i, piece);
-        }
-        return file;
-    }
-
     public void closeFile() throws IOException {
         lock.writeLock().lock();
-        if (!isReadOnlyFile) {
-            pushFileToDisk();
+        try {
+            if (!isReadOnlyFile)
+                writer.close();
+            file.close();
+        } finally {
+            lock.writeLock().unlock();
         }
-        lock.writeLock().unlock();
     }
 
-    private void pushFileToDisk() throws IOException {
-        int i = 0;
-        for (byte[] value : filePieces.values()) {
-            file.seek((long) (i++) * commonConfig.getPieceSize());
-            file.write(value);
+    public void addFilePiece(byte[] piece, int pieceIndex) throws IOException {
+        writer.submit(pieceIndex, piece);
+    }
+
+    public byte[] getFilePiece(int pieceIndex) {
+        lock.readLock().lock();
+        try {
+            byte[] piece = isReadOnlyFile ? null : writer.getPendingPiece(pieceIndex);
+            return piece != null ? piece : pieceStore.readPiece(pieceIndex);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
-    public void addFilePiece(byte[] piece, int pieceIndex) {
-        filePieces.put(pieceIndex, piece);
+    public String getFilePath() {
+        return filePath;
     }
 
-    public byte[] getFilePiece(int pieceIndex) {
-        return filePieces.get(pieceIndex);
+    public int getPieceLength(int pieceIndex) {
+        return pieceStore.getPieceLength(pieceIndex);
     }
 
-    public Map<Integer, byte[]> getFilePieces() {
-        return filePieces;
+    public boolean isPieceOnDisk(int pieceIndex) throws IOException {
+        if (!isReadOnlyFile && writer.isPending(pieceIndex))
+            return false;
+        return (long) pieceIndex * commonConfig.getPieceSize() + getPieceLength(pieceIndex) <= file.getChannel().size();
     }
 
+    public void transferBlock(int pieceIndex, int offset, int length, WritableByteChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < length)
+            transferred += transferBlock(pieceIndex, offset + transferred, length - transferred, target);
+    }
+
+    public long transferBlock(int pieceIndex, long offset, long length, WritableByteChannel target) throws IOException {
+        lock.readLock().lock();
+        try {
+            FileChannel channel = file.getChannel();
+            long position = (long) pieceIndex * commonConfig.getPieceSize() + offset;
+            return channel.transferTo(position, length, target);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package org.networks.java.helper;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Read side of the piece storage, backed by memory mappings of the target file so pieces are served
+ * from the page cache instead of being held on the heap. A single mapping cannot exceed 2 GB, so the
+ * file is mapped in windows of whole pieces and every piece lies inside exactly one window.
+ */
+public class MappedPieceStore {
+
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+    private final long fileSize;
+    private final int pieceSize;
+    private final int piecesPerWindow;
+
+    private final MappedByteBuffer[] windows;
+
+    public MappedPieceStore(final FileChannel channel, final long fileSize, final int pieceSize) throws IOException {
+        this.fileSize = fileSize;
+        this.pieceSize = pieceSize;
+        piecesPerWindow = (int) Math.max(1, MAX_WINDOW_SIZE / pieceSize);
+        long windowSize = (long) piecesPerWindow * pieceSize;
+        long mappedSize = Math.min(fileSize, channel.size());
+
+        windows = new MappedByteBuffer[(int) ((mappedSize + windowSize - 1) / windowSize)];
+        for (int i = 0; i < windows.length; i++) {
+            long position = i * windowSize;
+            windows[i] = channel.map(MapMode.READ_ONLY, position, Math.min(windowSize, mappedSize - position));
+        }
+    }
+
+    public int getPieceLength(int pieceIndex) {
+        return (int) Math.min(fileSize - (long) pieceIndex * pieceSize, pieceSize);
+    }
+
+    public byte[] readPiece(int pieceIndex) {
+        byte[] piece = new byte[getPieceLength(pieceIndex)];
+        int window = pieceIndex / piecesPerWindow;
+        if (window >= windows.length)
+            return piece;
+        int offset = (pieceIndex % piecesPerWindow) * pieceSize;
+        int available = Math.min(piece.length, windows[window].capacity() - offset);
+        if (available > 0)
+            windows[window].get(offset, piece, 0, available);
+        return piece;
+    }
+}
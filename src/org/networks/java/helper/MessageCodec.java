@@ -0,0 +1,170 @@
+package org.networks.java.helper;
+
+import org.networks.java.helper.Constants.MessageType;
+import org.networks.java.model.BlockMessage;
+import org.networks.java.model.BlockRequest;
+import org.networks.java.model.FileRegionMessage;
+import org.networks.java.model.HaveMessage;
+import org.networks.java.model.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes messages into caller-owned buffers without intermediate arrays. Messages without a payload are
+ * shared singletons whose frames are encoded once up front. A {@link FileRegionMessage} is encoded as its
+ * PIECE header only; the block itself is transferred from the file by the caller. Received frames are
+ * decoded in place and their payload handed on as a view of the read buffer.
+ */
+public class MessageCodec {
+
+    public static final int FRAME_HEADER_LEN = Constants.MSG_LEN_LEN + Constants.MSG_TYPE_LEN;
+    public static final int BLOCK_PAYLOAD_LEN = Constants.PIECE_INDEX_PAYLOAD_LEN + Constants.BLOCK_OFFSET_PAYLOAD_LEN
+            + Constants.BLOCK_LENGTH_PAYLOAD_LEN;
+    public static final int PIECE_HEADER_PAYLOAD_LEN = Constants.PIECE_INDEX_PAYLOAD_LEN + Constants.BLOCK_OFFSET_PAYLOAD_LEN;
+
+    /**
+     * Byte-array payloads longer than this are better written from the array itself with a gathering write
+     * than copied into the send buffer.
+     */
+    public static final int MAX_COPIED_PAYLOAD_LEN = 1024;
+
+    private static final Message[] CONTROL_MESSAGES = new Message[MessageType.values().length];
+    private static final byte[][] CONTROL_FRAMES = new byte[MessageType.values().length][];
+
+    static {
+        for (MessageType messageType : new MessageType[]{MessageType.CHOKE, MessageType.UNCHOKE,
+                MessageType.INTERESTED, MessageType.NOT_INTERESTED}) {
+            CONTROL_MESSAGES[messageType.ordinal()] = new Message(messageType, null);
+            CONTROL_FRAMES[messageType.ordinal()] = ByteBuffer.allocate(FRAME_HEADER_LEN)
+                    .putInt(0).put((byte) messageType.ordinal()).array();
+        }
+    }
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Receives the payload of a decoded frame. The buffer is only valid for the duration of the call.
+     */
+    public interface FrameHandler {
+
+        void handleMessage(MessageType messageType, ByteBuffer payload) throws IOException;
+    }
+
+    /**
+     * Returns the shared message for CHOKE, UNCHOKE, INTERESTED or NOT_INTERESTED.
+     */
+    public static Message controlMessage(MessageType messageType) {
+        Message message = CONTROL_MESSAGES[messageType.ordinal()];
+        if (message == null)
+            throw new IllegalArgumentException(messageType + " carries a payload");
+        return message;
+    }
+
+    /**
+     * Returns a HAVE for the piece. It holds nothing but the index, which {@link #encode} writes straight
+     * into the frame, and lives only until it is sent, like a REQUEST; nothing is kept per piece.
+     */
+    public static Message haveMessage(int pieceIndex) {
+        return new HaveMessage(pieceIndex);
+    }
+
+    public static int getEncodedLength(Message msg) {
+        if (msg instanceof FileRegionMessage)
+            return FRAME_HEADER_LEN + PIECE_HEADER_PAYLOAD_LEN;
+        return FRAME_HEADER_LEN + getPayloadLength(msg);
+    }
+
+    /**
+     * Returns the length field of the frame, which for a PIECE includes the block.
+     */
+    public static int getPayloadLength(Message msg) {
+        if (msg instanceof FileRegionMessage)
+            return PIECE_HEADER_PAYLOAD_LEN + ((FileRegionMessage) msg).getLength();
+        if (msg instanceof HaveMessage)
+            return Constants.PIECE_INDEX_PAYLOAD_LEN;
+        if (msg instanceof BlockMessage)
+            return BLOCK_PAYLOAD_LEN;
+        return msg.getMessagePacket() != null ? msg.getMessagePacket().length : 0;
+    }
+
+    public static int getPiecePayloadLength(Message msg) {
+        return getPayloadLength(msg) - PIECE_HEADER_PAYLOAD_LEN;
+    }
+
+    /**
+     * Encodes only the length and type of a message whose payload is a byte array.
+     */
+    public static void encodeHeader(Message msg, ByteBuffer dst) {
+        dst.putInt(msg.getMessagePacket().length);
+        dst.put((byte) msg.getMessageType().ordinal());
+    }
+
+    public static void encode(Message msg, ByteBuffer dst) {
+        byte[] controlFrame = CONTROL_FRAMES[msg.getMessageType().ordinal()];
+        if (controlFrame != null) {
+            dst.put(controlFrame);
+            return;
+        }
+
+        dst.putInt(getPayloadLength(msg));
+        dst.put((byte) msg.getMessageType().ordinal());
+        if (msg instanceof FileRegionMessage) {
+            FileRegionMessage region = (FileRegionMessage) msg;
+            dst.putInt(region.getPieceIndex());
+            dst.putInt(region.getOffset());
+        } else if (msg instanceof HaveMessage) {
+            dst.putInt(((HaveMessage) msg).getPieceIndex());
+        } else if (msg instanceof BlockMessage) {
+            BlockRequest blockRequest = ((BlockMessage) msg).getBlockRequest();
+            dst.putInt(blockRequest.getPieceIndex());
+            dst.putInt(blockRequest.getOffset());
+            dst.putInt(blockRequest.getLength());
+        } else if (msg.getMessagePacket() != null) {
+            dst.put(msg.getMessagePacket());
+        }
+    }
+
+    /**
+     * Returns the length, header included, of the frame at the buffer's position, or -1 while its header has
+     * not fully arrived.
+     */
+    public static int getFrameLength(ByteBuffer src) throws IOException {
+        if (src.remaining() < FRAME_HEADER_LEN)
+            return -1;
+        int messageLength = src.getInt(src.position());
+        if (messageLength < 0 || messageLength > Integer.MAX_VALUE - FRAME_HEADER_LEN)
+            throw new IOException("Invalid message length " + messageLength);
+        return FRAME_HEADER_LEN + messageLength;
+    }
+
+    /**
+     * Returns the type of the frame at the buffer's position, whose header must have arrived.
+     */
+    public static MessageType getMessageType(ByteBuffer src) throws IOException {
+        int typeIdx = src.get(src.position() + Constants.MSG_LEN_LEN);
+        if (typeIdx < 0 || typeIdx >= MessageType.values().length)
+            throw new IOException("Invalid message type " + typeIdx);
+        return MessageType.getMessageValue(typeIdx);
+    }
+
+    /**
+     * Decodes the frame at the buffer's position, which must have fully arrived, and hands its payload to
+     * the handler limited to the frame. Leaves the buffer positioned after the frame whatever the handler
+     * consumed.
+     */
+    public static MessageType decode(ByteBuffer src, FrameHandler handler) throws IOException {
+        int start = src.position();
+        int end = start + getFrameLength(src);
+        MessageType messageType = getMessageType(src);
+        int limit = src.limit();
+        src.limit(end).position(start + FRAME_HEADER_LEN);
+        try {
+            handler.handleMessage(messageType, src);
+        } finally {
+            src.limit(limit).position(end);
+        }
+        return messageType;
+    }
+}
@@ -51,14 +51,10 @@ public class MessageStream {
 	}
 
 	public int read4ByteIntData() throws IOException {
-		byte[] data = new byte[Constants.MSG_LEN_LEN];
-		inStream.read(data);
-		return byteArrayToInt(data);
+		return inStream.readInt();
 	}
 
 	public int read1ByteMsgType() throws IOException {
-		byte[] data = new byte[Constants.MSG_TYPE_LEN];
-		inStream.read(data);
-		return byteArrayToInt(data);
+		return inStream.readUnsignedByte();
 	}
 }
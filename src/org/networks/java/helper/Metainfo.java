@@ -0,0 +1,220 @@
+package org.networks.java.helper;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Describes the shared file: its length, the piece size and a digest of every piece. Stored in the same
+ * key/value layout as Common.cfg, with the digests concatenated as hex under {@code PieceHashes}. The file
+ * is replaced atomically, so peers sharing a directory never see one half written.
+ */
+public class Metainfo {
+
+    private static final String FILE_NAME = "FileName";
+    private static final String FILE_SIZE = "FileSize";
+    private static final String PIECE_SIZE = "PieceSize";
+    private static final String HASH_ALGORITHM = "HashAlgorithm";
+    private static final String PIECE_HASHES = "PieceHashes";
+
+    private static final String INFO_HASH_ALGORITHM = "SHA-1";
+    private static final int PIECES_PER_HASH_TASK = 16;
+
+    private final String fileName;
+    private final long fileSize;
+    private final int pieceSize;
+    private final String hashAlgorithm;
+    private final byte[][] pieceHashes;
+
+    private final ThreadLocal<MessageDigest> digest;
+
+    public Metainfo(String fileName, long fileSize, int pieceSize, String hashAlgorithm, byte[][] pieceHashes) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.pieceSize = pieceSize;
+        this.hashAlgorithm = hashAlgorithm;
+        this.pieceHashes = pieceHashes;
+        digest = ThreadLocal.withInitial(() -> newDigest(hashAlgorithm));
+    }
+
+    public static Metainfo build(Path seedFile, String fileName, int pieceSize, String hashAlgorithm) throws IOException {
+        newDigest(hashAlgorithm);
+        try (FileChannel channel = FileChannel.open(seedFile, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int numberOfPieces = Math.toIntExact((fileSize + pieceSize - 1) / pieceSize);
+            Metainfo metainfo = new Metainfo(fileName, fileSize, pieceSize, hashAlgorithm, new byte[numberOfPieces][]);
+            try {
+                ForkJoinPool.commonPool().invoke(new HashTask(metainfo, channel, 0, numberOfPieces));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return metainfo;
+        }
+    }
+
+    public static Metainfo read(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inStream = Files.newInputStream(path)) {
+            properties.load(inStream);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed metainfo " + path, e);
+        }
+
+        try {
+            String hashAlgorithm = properties.getProperty(HASH_ALGORITHM, Constants.DEFAULT_HASH_ALGORITHM).trim();
+            int digestLength = newDigest(hashAlgorithm).getDigestLength();
+            byte[] hashes = HexFormat.of().parseHex(getRequiredProperty(properties, PIECE_HASHES, path));
+            if (hashes.length % digestLength != 0)
+                throw new IOException("Malformed piece hashes in " + path);
+
+            byte[][] pieceHashes = new byte[hashes.length / digestLength][];
+            for (int i = 0; i < pieceHashes.length; i++)
+                pieceHashes[i] = Arrays.copyOfRange(hashes, i * digestLength, (i + 1) * digestLength);
+            return new Metainfo(getRequiredProperty(properties, FILE_NAME, path),
+                    Long.parseLong(getRequiredProperty(properties, FILE_SIZE, path)),
+                    Integer.parseInt(getRequiredProperty(properties, PIECE_SIZE, path)), hashAlgorithm, pieceHashes);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed metainfo " + path, e);
+        }
+    }
+
+    private static String getRequiredProperty(Properties properties, String key, Path path) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null)
+            throw new IOException("Missing " + key + " in metainfo " + path);
+        return value.trim();
+    }
+
+    public void write(Path path) throws IOException {
+        HexFormat hex = HexFormat.of();
+        StringBuilder hashes = new StringBuilder();
+        for (byte[] pieceHash : pieceHashes)
+            hashes.append(hex.formatHex(pieceHash));
+
+        Path target = path.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                writer.write(FILE_NAME + " " + fileName + System.lineSeparator());
+                writer.write(FILE_SIZE + " " + fileSize + System.lineSeparator());
+                writer.write(PIECE_SIZE + " " + pieceSize + System.lineSeparator());
+                writer.write(HASH_ALGORITHM + " " + hashAlgorithm + System.lineSeparator());
+                writer.write(PIECE_HASHES + " " + hashes + System.lineSeparator());
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public boolean verify(int pieceIndex, byte[] piece) {
+        if (pieceIndex < 0 || pieceIndex >= pieceHashes.length)
+            return false;
+        MessageDigest messageDigest = digest.get();
+        messageDigest.reset();
+        return MessageDigest.isEqual(messageDigest.digest(piece), pieceHashes[pieceIndex]);
+    }
+
+    public boolean matches(CommonConfig commonConfig) {
+        return fileSize == commonConfig.getFileSize() && pieceSize == commonConfig.getPieceSize()
+                && pieceHashes.length == commonConfig.getNumberOfPieces();
+    }
+
+    /**
+     * Identifies the swarm for a file: a SHA-1 over its name, length and piece size, in hex. Peers can agree
+     * on it from Common.cfg alone, before either side has the metainfo file.
+     */
+    public static String infoHash(String fileName, long fileSize, int pieceSize) {
+        byte[] identity = (fileName + '\n' + fileSize + '\n' + pieceSize).getBytes(StandardCharsets.UTF_8);
+        return HexFormat.of().formatHex(newDigest(INFO_HASH_ALGORITHM).digest(identity));
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getPieceSize() {
+        return pieceSize;
+    }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public int getNumberOfPieces() {
+        return pieceHashes.length;
+    }
+
+    private static MessageDigest newDigest(String hashAlgorithm) {
+        try {
+            return MessageDigest.getInstance(hashAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported hash algorithm " + hashAlgorithm, e);
+        }
+    }
+
+    /**
+     * Hashes a range of pieces into the metainfo, splitting it across the pool. Never serialized.
+     */
+    private static class HashTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Metainfo metainfo;
+        private final transient FileChannel channel;
+        private final int fromPiece;
+        private final int toPiece;
+
+        HashTask(Metainfo metainfo, FileChannel channel, int fromPiece, int toPiece) {
+            this.metainfo = metainfo;
+            this.channel = channel;
+            this.fromPiece = fromPiece;
+            this.toPiece = toPiece;
+        }
+
+        @Override
+        protected void compute() {
+            if (toPiece - fromPiece > PIECES_PER_HASH_TASK) {
+                int middle = (fromPiece + toPiece) >>> 1;
+                invokeAll(new HashTask(metainfo, channel, fromPiece, middle), new HashTask(metainfo, channel, middle, toPiece));
+                return;
+            }
+
+            int pieceSize = metainfo.pieceSize;
+            MessageDigest messageDigest = metainfo.digest.get();
+            ByteBuffer buffer = ByteBuffer.allocate(pieceSize);
+            try {
+                for (int i = fromPiece; i < toPiece; i++) {
+                    long position = (long) i * pieceSize;
+                    buffer.clear().limit((int) Math.min(pieceSize, metainfo.fileSize - position));
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer, position + buffer.position()) < 0)
+                            throw new EOFException("Seed file shrank while hashing piece " + i);
+                    }
+                    buffer.flip();
+                    messageDigest.reset();
+                    messageDigest.update(buffer);
+                    metainfo.pieceHashes[i] = messageDigest.digest();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.networks.java.helper;
+
+import org.networks.java.model.BlockRequest;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A piece that is being assembled from blocks, possibly fetched from several neighbours at once.
+ * Callers are expected to hold the owning peer's lock.
+ */
+public class PartialPiece {
+
+    private final int pieceIndex;
+    private final int blockSize;
+    private final int blockCount;
+    private final byte[] data;
+
+    private final BitSet requestedBlocks;
+    private final BitSet receivedBlocks;
+    // Requests in flight per block; more than one only for blocks duplicated in endgame.
+    private final int[] requestCounts;
+
+    public PartialPiece(final int pieceIndex, final int pieceLength, final int blockSize) {
+        this.pieceIndex = pieceIndex;
+        this.blockSize = blockSize;
+        blockCount = (pieceLength + blockSize - 1) / blockSize;
+        data = new byte[pieceLength];
+        requestedBlocks = new BitSet(blockCount);
+        receivedBlocks = new BitSet(blockCount);
+        requestCounts = new int[blockCount];
+    }
+
+    public int getPieceIndex() {
+        return pieceIndex;
+    }
+
+    public BlockRequest claimBlock() {
+        int block = requestedBlocks.nextClearBit(0);
+        if (block >= blockCount)
+            return null;
+        requestedBlocks.set(block);
+        requestCounts[block]++;
+        return toBlockRequest(block);
+    }
+
+    /**
+     * Records one more request for a block that is already requested elsewhere.
+     */
+    public void claimDuplicateBlock(int offset) {
+        requestCounts[offset / blockSize]++;
+    }
+
+    /**
+     * Gives up one request for the block. It can be claimed again once no request for it is left.
+     */
+    public void releaseBlock(int offset) {
+        int block = offset / blockSize;
+        if (receivedBlocks.get(block) || requestCounts[block] == 0)
+            return;
+        if (--requestCounts[block] == 0)
+            requestedBlocks.clear(block);
+    }
+
+    public boolean receiveBlock(int offset, ByteBuffer block) {
+        if (offset < 0 || offset % blockSize != 0 || offset / blockSize >= blockCount)
+            return false;
+        int blockIndex = offset / blockSize;
+        if (receivedBlocks.get(blockIndex) || block.remaining() != getBlockLength(blockIndex))
+            return false;
+        block.get(data, offset, block.remaining());
+        receivedBlocks.set(blockIndex);
+        requestedBlocks.set(blockIndex);
+        return true;
+    }
+
+    public boolean isUntouched() {
+        return requestedBlocks.isEmpty();
+    }
+
+    public boolean isFullyRequested() {
+        return requestedBlocks.cardinality() == blockCount;
+    }
+
+    public int getOutstandingBlockCount() {
+        return requestedBlocks.cardinality() - receivedBlocks.cardinality();
+    }
+
+    public List<BlockRequest> getOutstandingBlocks() {
+        List<BlockRequest> outstandingBlocks = new ArrayList<>();
+        for (int block = receivedBlocks.nextClearBit(0); block < blockCount; block = receivedBlocks.nextClearBit(block + 1)) {
+            if (requestedBlocks.get(block))
+                outstandingBlocks.add(toBlockRequest(block));
+        }
+        return outstandingBlocks;
+    }
+
+    public boolean isComplete() {
+        return receivedBlocks.cardinality() == blockCount;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    private int getBlockLength(int block) {
+        return Math.min(blockSize, data.length - block * blockSize);
+    }
+
+    private BlockRequest toBlockRequest(int block) {
+        return new BlockRequest(pieceIndex, block * blockSize, getBlockLength(block));
+    }
+}
@@ -0,0 +1,143 @@
+package org.networks.java.helper;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+import java.util.random.RandomGenerator;
+
+/**
+ * Rarest-first piece selection. The pieces still missing locally are kept in one array ordered by how
+ * many neighbours have them, so availability changes are a swap across a bucket boundary and a lookup
+ * walks the buckets from the rarest one up. Ties are broken by starting each bucket scan at a random slot.
+ * Not thread-safe; callers hold the owning peer's lock.
+ */
+public class PiecePicker {
+
+    private final int[] availability;
+    private final int[] pieces;
+    private final int[] positions;
+    private final RandomGenerator random;
+    private int size;
+
+    // bucketEnds[a] is the exclusive end of the pieces with availability <= a
+    private int[] bucketEnds;
+    private int maxAvailability;
+
+    public PiecePicker(int numberOfPieces) {
+        this(numberOfPieces, null);
+    }
+
+    /**
+     * Picker breaking ties with the given generator, so that a seeded one makes the picks repeatable.
+     */
+    public PiecePicker(int numberOfPieces, RandomGenerator random) {
+        this.random = random;
+        availability = new int[numberOfPieces];
+        pieces = new int[numberOfPieces];
+        positions = new int[numberOfPieces];
+        for (int i = 0; i < numberOfPieces; i++) {
+            pieces[i] = i;
+            positions[i] = i;
+        }
+        size = numberOfPieces;
+        bucketEnds = new int[]{numberOfPieces, numberOfPieces};
+        maxAvailability = 0;
+    }
+
+    public int getMissingCount() {
+        return size;
+    }
+
+    public boolean isMissing(int pieceIndex) {
+        return positions[pieceIndex] >= 0;
+    }
+
+    public int getAvailability(int pieceIndex) {
+        return availability[pieceIndex];
+    }
+
+    public void increment(int pieceIndex) {
+        int count = availability[pieceIndex]++;
+        if (count + 1 > maxAvailability)
+            growBuckets(count + 1);
+        if (!isMissing(pieceIndex))
+            return;
+        swap(positions[pieceIndex], bucketEnds[count] - 1);
+        bucketEnds[count]--;
+    }
+
+    public void decrement(int pieceIndex) {
+        int count = availability[pieceIndex];
+        if (count == 0)
+            return;
+        availability[pieceIndex]--;
+        if (!isMissing(pieceIndex))
+            return;
+        swap(positions[pieceIndex], bucketEnds[count - 1]);
+        bucketEnds[count - 1]++;
+    }
+
+    public void increment(AtomicBitfield pieceIndices) {
+        for (int i = pieceIndices.nextSetBit(0); i >= 0 && i < availability.length; i = pieceIndices.nextSetBit(i + 1))
+            increment(i);
+    }
+
+    public void decrement(AtomicBitfield pieceIndices) {
+        for (int i = pieceIndices.nextSetBit(0); i >= 0 && i < availability.length; i = pieceIndices.nextSetBit(i + 1))
+            decrement(i);
+    }
+
+    public void remove(int pieceIndex) {
+        if (!isMissing(pieceIndex))
+            return;
+        for (int count = availability[pieceIndex]; count <= maxAvailability; count++) {
+            swap(positions[pieceIndex], bucketEnds[count] - 1);
+            bucketEnds[count]--;
+        }
+        size--;
+        Arrays.fill(bucketEnds, maxAvailability + 1, bucketEnds.length, size);
+        positions[pieceIndex] = -1;
+    }
+
+    public int pickRarest(AtomicBitfield neighbourPieces, IntPredicate excluded) {
+        RandomGenerator random = this.random != null ? this.random : ThreadLocalRandom.current();
+        for (int count = 1; count <= maxAvailability; count++) {
+            int start = bucketEnds[count - 1];
+            int end = bucketEnds[count];
+            if (start == end)
+                continue;
+            int first = start + random.nextInt(end - start);
+            for (int i = first; i < end; i++) {
+                if (isCandidate(pieces[i], neighbourPieces, excluded))
+                    return pieces[i];
+            }
+            for (int i = start; i < first; i++) {
+                if (isCandidate(pieces[i], neighbourPieces, excluded))
+                    return pieces[i];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isCandidate(int pieceIndex, AtomicBitfield neighbourPieces, IntPredicate excluded) {
+        return neighbourPieces.get(pieceIndex) && !excluded.test(pieceIndex);
+    }
+
+    private void growBuckets(int availability) {
+        int oldLength = bucketEnds.length;
+        if (availability + 1 >= oldLength) {
+            bucketEnds = Arrays.copyOf(bucketEnds, Math.max(availability + 2, oldLength * 2));
+            Arrays.fill(bucketEnds, oldLength, bucketEnds.length, size);
+        }
+        maxAvailability = availability;
+    }
+
+    private void swap(int i, int j) {
+        int pieceI = pieces[i];
+        int pieceJ = pieces[j];
+        pieces[i] = pieceJ;
+        pieces[j] = pieceI;
+        positions[pieceJ] = i;
+        positions[pieceI] = j;
+    }
+}
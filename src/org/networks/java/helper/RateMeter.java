@@ -0,0 +1,75 @@
+package org.networks.java.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponentially weighted moving average of a byte rate over a configurable window. Recording only adds to
+ * a counter; whichever caller first notices that a one second tick has passed folds the counted bytes
+ * into the average. A meter can roll up into a parent, e.g. per connection into per peer.
+ */
+public class RateMeter {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateMeter parent;
+    private final LongSupplier clock;
+    private final double decayPerTick;
+
+    private final LongAdder uncounted;
+    private final LongAdder totalBytes;
+    private final AtomicLong lastTick;
+    private volatile double rate;
+
+    public RateMeter(final int windowSeconds, final RateMeter parent) {
+        this(windowSeconds, parent, System::nanoTime);
+    }
+
+    /**
+     * Meter driven by the given nanosecond clock instead of the system one, e.g. a simulation's virtual time.
+     */
+    public RateMeter(final int windowSeconds, final RateMeter parent, final LongSupplier clock) {
+        this.parent = parent;
+        this.clock = clock;
+        decayPerTick = Math.exp(-1.0 / windowSeconds);
+        uncounted = new LongAdder();
+        totalBytes = new LongAdder();
+        lastTick = new AtomicLong(clock.getAsLong());
+    }
+
+    public void update(long bytes) {
+        tickIfNecessary();
+        uncounted.add(bytes);
+        totalBytes.add(bytes);
+        if (parent != null)
+            parent.update(bytes);
+    }
+
+    /**
+     * Returns the average rate in bytes per second.
+     */
+    public double getRate() {
+        tickIfNecessary();
+        return rate;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.sum();
+    }
+
+    private void tickIfNecessary() {
+        long previousTick = lastTick.get();
+        long age = clock.getAsLong() - previousTick;
+        if (age < TICK_NANOS)
+            return;
+        long ticks = age / TICK_NANOS;
+        if (!lastTick.compareAndSet(previousTick, previousTick + ticks * TICK_NANOS))
+            return;
+
+        // Bytes seen since the last fold are spread evenly over the elapsed one second ticks.
+        double tickRate = (double) uncounted.sumThenReset() / ticks;
+        rate = tickRate + (rate - tickRate) * Math.pow(decayPerTick, ticks);
+    }
+}
@@ -0,0 +1,99 @@
+package org.networks.java.helper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Fast-resume state kept next to a downloaded file: a header describing the file, then one fixed-size slot
+ * per piece holding a present flag and the CRC32C of the piece as written. Slots are rewritten in place
+ * as pieces reach the disk, so restarting only has to read this file back.
+ */
+public class ResumeFile {
+
+    private static final int MAGIC = 0x50325052;
+    private static final int VERSION = 1;
+    private static final int HEADER_LEN = 2 * Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    private static final int SLOT_LEN = 1 + Integer.BYTES;
+    private static final byte PIECE_PRESENT = 1;
+
+    private final FileChannel channel;
+    private final int numberOfPieces;
+    private final BitSet resumedPieces;
+    private final int[] checksums;
+
+    public ResumeFile(final Path path, final long fileSize, final int pieceSize, final int numberOfPieces) throws IOException {
+        this.numberOfPieces = numberOfPieces;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        resumedPieces = new BitSet(numberOfPieces);
+        checksums = new int[numberOfPieces];
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LEN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(fileSize).putInt(pieceSize).putInt(numberOfPieces).flip();
+        if (!load(header)) {
+            channel.truncate(0);
+            channel.write(header.rewind(), 0);
+            channel.write(ByteBuffer.allocate(numberOfPieces * SLOT_LEN), HEADER_LEN);
+        }
+    }
+
+    private boolean load(ByteBuffer expectedHeader) throws IOException {
+        if (channel.size() != HEADER_LEN + (long) numberOfPieces * SLOT_LEN)
+            return false;
+        ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+        while (contents.hasRemaining()) {
+            if (channel.read(contents, contents.position()) < 0)
+                return false;
+        }
+        contents.flip();
+        if (!contents.slice(0, HEADER_LEN).equals(expectedHeader))
+            return false;
+
+        for (int i = 0; i < numberOfPieces; i++) {
+            int slot = HEADER_LEN + i * SLOT_LEN;
+            if (contents.get(slot) == PIECE_PRESENT) {
+                resumedPieces.set(i);
+                checksums[i] = contents.getInt(slot + 1);
+            }
+        }
+        return true;
+    }
+
+    public BitSet getResumedPieces() {
+        return (BitSet) resumedPieces.clone();
+    }
+
+    public int getChecksum(int pieceIndex) {
+        return checksums[pieceIndex];
+    }
+
+    public void record(Map<Integer, byte[]> pieces) throws IOException {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_LEN);
+        for (Map.Entry<Integer, byte[]> piece : pieces.entrySet()) {
+            slot.clear();
+            slot.put(PIECE_PRESENT).putInt(checksum(piece.getValue())).flip();
+            channel.write(slot, HEADER_LEN + (long) piece.getKey() * SLOT_LEN);
+        }
+    }
+
+    public void clear(int pieceIndex) throws IOException {
+        channel.write(ByteBuffer.allocate(SLOT_LEN), HEADER_LEN + (long) pieceIndex * SLOT_LEN);
+    }
+
+    public void close(boolean force) throws IOException {
+        if (force)
+            channel.force(false);
+        channel.close();
+    }
+
+    public static int checksum(byte[] piece) {
+        CRC32C crc = new CRC32C();
+        crc.update(piece, 0, piece.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,143 @@
+package org.networks.java.helper;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Transfer counters of one peer in one swarm, written when the swarm shuts down so that a load run can be
+ * evaluated afterwards. Stored in the same key/value layout as Common.cfg; times are epoch milliseconds.
+ */
+public class SwarmStats {
+
+    private static final String PEER_ID = "PeerId";
+    private static final String START_MILLIS = "StartMillis";
+    private static final String COMPLETE_MILLIS = "CompleteMillis";
+    private static final String PIECES_DOWNLOADED = "PiecesDownloaded";
+    private static final String PIECE_BYTES_DOWNLOADED = "PieceBytesDownloaded";
+    private static final String BYTES_RECEIVED = "BytesReceived";
+    private static final String BYTES_SENT = "BytesSent";
+    private static final String DUPLICATE_PIECES = "DuplicatePieces";
+    private static final String DUPLICATE_BLOCKS = "DuplicateBlocks";
+    private static final String DUPLICATE_BYTES = "DuplicateBytes";
+    private static final String HASH_FAILURES = "HashFailures";
+
+    private final String peerId;
+    private final long startMillis;
+    private final long completeMillis;
+    private final long piecesDownloaded;
+    private final long pieceBytesDownloaded;
+    private final long bytesReceived;
+    private final long bytesSent;
+    private final long duplicatePieces;
+    private final long duplicateBlocks;
+    private final long duplicateBytes;
+    private final long hashFailures;
+
+    public SwarmStats(String peerId, long startMillis, long completeMillis, long piecesDownloaded, long pieceBytesDownloaded,
+                      long bytesReceived, long bytesSent, long duplicatePieces, long duplicateBlocks, long duplicateBytes,
+                      long hashFailures) {
+        this.peerId = peerId;
+        this.startMillis = startMillis;
+        this.completeMillis = completeMillis;
+        this.piecesDownloaded = piecesDownloaded;
+        this.pieceBytesDownloaded = pieceBytesDownloaded;
+        this.bytesReceived = bytesReceived;
+        this.bytesSent = bytesSent;
+        this.duplicatePieces = duplicatePieces;
+        this.duplicateBlocks = duplicateBlocks;
+        this.duplicateBytes = duplicateBytes;
+        this.hashFailures = hashFailures;
+    }
+
+    public static SwarmStats read(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inStream = new FileInputStream(path.toFile())) {
+            properties.load(inStream);
+        }
+        return new SwarmStats(properties.getProperty(PEER_ID).trim(), getLong(properties, START_MILLIS),
+                getLong(properties, COMPLETE_MILLIS), getLong(properties, PIECES_DOWNLOADED),
+                getLong(properties, PIECE_BYTES_DOWNLOADED), getLong(properties, BYTES_RECEIVED), getLong(properties, BYTES_SENT),
+                getLong(properties, DUPLICATE_PIECES), getLong(properties, DUPLICATE_BLOCKS), getLong(properties, DUPLICATE_BYTES),
+                getLong(properties, HASH_FAILURES));
+    }
+
+    private static long getLong(Properties properties, String key) {
+        return Long.parseLong(properties.getProperty(key, "0").trim());
+    }
+
+    public void write(Path path) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(path.toFile()))) {
+            writer.write(PEER_ID + " " + peerId + System.lineSeparator());
+            writer.write(START_MILLIS + " " + startMillis + System.lineSeparator());
+            writer.write(COMPLETE_MILLIS + " " + completeMillis + System.lineSeparator());
+            writer.write(PIECES_DOWNLOADED + " " + piecesDownloaded + System.lineSeparator());
+            writer.write(PIECE_BYTES_DOWNLOADED + " " + pieceBytesDownloaded + System.lineSeparator());
+            writer.write(BYTES_RECEIVED + " " + bytesReceived + System.lineSeparator());
+            writer.write(BYTES_SENT + " " + bytesSent + System.lineSeparator());
+            writer.write(DUPLICATE_PIECES + " " + duplicatePieces + System.lineSeparator());
+            writer.write(DUPLICATE_BLOCKS + " " + duplicateBlocks + System.lineSeparator());
+            writer.write(DUPLICATE_BYTES + " " + duplicateBytes + System.lineSeparator());
+            writer.write(HASH_FAILURES + " " + hashFailures + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Milliseconds from the swarm starting to it holding the whole file; zero for a peer that started as a seed.
+     */
+    public long getTimeToComplete() {
+        return Math.max(0, completeMillis - startMillis);
+    }
+
+    /**
+     * Received bytes per downloaded piece beyond the piece data itself: message framing, control messages
+     * and duplicate blocks.
+     */
+    public double getOverheadPerPiece() {
+        return piecesDownloaded == 0 ? 0 : (double) (bytesReceived - pieceBytesDownloaded) / piecesDownloaded;
+    }
+
+    public String getPeerId() {
+        return peerId;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getCompleteMillis() {
+        return completeMillis;
+    }
+
+    public long getPiecesDownloaded() {
+        return piecesDownloaded;
+    }
+
+    public long getPieceBytesDownloaded() {
+        return pieceBytesDownloaded;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getDuplicatePieces() {
+        return duplicatePieces;
+    }
+
+    public long getDuplicateBlocks() {
+        return duplicateBlocks;
+    }
+
+    public long getDuplicateBytes() {
+        return duplicateBytes;
+    }
+
+    public long getHashFailures() {
+        return hashFailures;
+    }
+}
@@ -0,0 +1,50 @@
+package org.networks.java.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte-rate limit expressed as a token bucket holding up to one second of tokens. The bucket is kept as a
+ * single theoretical-arrival timestamp that callers advance with a CAS, so reserving never takes a lock.
+ * Reservations always succeed and may put the bucket into debt; the caller is told how long to wait before
+ * moving the reserved bytes. A rate of zero disables the limit.
+ */
+public class TokenBucket {
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong theoreticalArrival;
+    private volatile long bytesPerSecond;
+    private volatile double nanosPerByte;
+
+    public TokenBucket(long bytesPerSecond) {
+        theoreticalArrival = new AtomicLong(System.nanoTime() - BURST_NANOS);
+        setRate(bytesPerSecond);
+    }
+
+    public void setRate(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        nanosPerByte = this.bytesPerSecond == 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / this.bytesPerSecond;
+    }
+
+    public long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Takes {@code bytes} tokens and returns how many nanoseconds the caller should wait before using them.
+     */
+    public long reserve(long bytes) {
+        double cost = nanosPerByte;
+        if (cost == 0)
+            return 0;
+        long costNanos = (long) (bytes * cost);
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long nextArrival = Math.max(arrival, now - BURST_NANOS) + costNanos;
+            if (theoreticalArrival.compareAndSet(arrival, nextArrival))
+                return Math.max(0, nextArrival - now);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.networks.java.helper;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool of workers that verify and commit completed pieces off the network threads. At most
+ * {@code threads + queueDepth} pieces may be waiting or in progress. A piece submitted beyond that is parked
+ * until a slot frees up and its submitter is told to stop reading from the socket that delivered it, so the
+ * backlog ends up in that neighbour's TCP window and never stalls an event loop.
+ */
+public class VerificationExecutor {
+
+    private final Semaphore permits;
+    private final ExecutorService workers;
+    private final Queue<ParkedTask> parkedTasks = new ConcurrentLinkedQueue<>();
+
+    public VerificationExecutor(final int threads, final int queueDepth, final String namePrefix) {
+        permits = new Semaphore(threads + queueDepth);
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, namePrefix + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hands the task to the workers and returns true if a slot is free. Otherwise parks it and returns false;
+     * the caller should submit nothing more until {@code onStarted} runs, which happens once the task got a
+     * slot, on whichever thread freed it, possibly before this method returns.
+     */
+    public boolean execute(Runnable task, Runnable onStarted) {
+        if (permits.tryAcquire()) {
+            start(task);
+            return true;
+        }
+        parkedTasks.add(new ParkedTask(task, onStarted));
+        // A slot may have been freed between the failed tryAcquire and the add.
+        startParkedTasks();
+        return false;
+    }
+
+    private void start(Runnable task) {
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                    startParkedTasks();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void startParkedTasks() {
+        while (!parkedTasks.isEmpty() && permits.tryAcquire()) {
+            ParkedTask parkedTask = parkedTasks.poll();
+            if (parkedTask == null) {
+                permits.release();
+                continue;
+            }
+            try {
+                start(parkedTask.task);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: drop the piece but still let its connection carry on.
+            }
+            parkedTask.onStarted.run();
+        }
+    }
+
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        workers.shutdown();
+        workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static class ParkedTask {
+
+        private final Runnable task;
+        private final Runnable onStarted;
+
+        ParkedTask(Runnable task, Runnable onStarted) {
+            this.task = task;
+            this.onStarted = onStarted;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.networks.java.helper;
+
+import org.networks.java.helper.Constants.FsyncPolicy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persists accepted pieces on a dedicated I/O thread. Pieces stay readable from memory until they have
+ * been written; contiguous pieces in a batch are written with a single gathering write. Written pieces
+ * are then recorded in the resume file, if there is one.
+ */
+public class WriteBehindWriter implements Runnable {
+
+    private static final int CLOSE_MARKER = -1;
+
+    private final FileChannel channel;
+    private final int pieceSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ResumeFile resumeFile;
+
+    private final BlockingQueue<Integer> writeQueue;
+    private final ConcurrentHashMap<Integer, byte[]> pendingPieces;
+    private final Thread worker;
+
+    private volatile IOException failure;
+
+    public WriteBehindWriter(final FileChannel channel, final int pieceSize,
+                             final int queueDepth, final FsyncPolicy fsyncPolicy, final ResumeFile resumeFile) {
+        this.channel = channel;
+        this.pieceSize = pieceSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.resumeFile = resumeFile;
+        writeQueue = new ArrayBlockingQueue<>(queueDepth);
+        pendingPieces = new ConcurrentHashMap<>();
+        worker = new Thread(this, "write-behind");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void submit(int pieceIndex, byte[] piece) throws IOException {
+        checkFailure();
+        pendingPieces.put(pieceIndex, piece);
+        try {
+            writeQueue.put(pieceIndex);
+        } catch (InterruptedException e) {
+            pendingPieces.remove(pieceIndex, piece);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing piece " + pieceIndex);
+        }
+    }
+
+    public byte[] getPendingPiece(int pieceIndex) {
+        return pendingPieces.get(pieceIndex);
+    }
+
+    public boolean isPending(int pieceIndex) {
+        return pendingPieces.containsKey(pieceIndex);
+    }
+
+    public void close() throws IOException {
+        try {
+            writeQueue.put(CLOSE_MARKER);
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing pieces");
+        }
+        checkFailure();
+        if (fsyncPolicy != FsyncPolicy.NEVER)
+            channel.force(false);
+        if (resumeFile != null)
+            resumeFile.close(fsyncPolicy != FsyncPolicy.NEVER);
+    }
+
+    @Override
+    public void run() {
+        List<Integer> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(writeQueue.take());
+                writeQueue.drainTo(batch);
+                boolean closed = batch.remove(Integer.valueOf(CLOSE_MARKER));
+                try {
+                    writeBatch(batch);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                batch.clear();
+                if (closed)
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBatch(List<Integer> batch) throws IOException {
+        TreeMap<Integer, byte[]> pieces = new TreeMap<>();
+        for (Integer pieceIndex : batch) {
+            byte[] piece = pendingPieces.get(pieceIndex);
+            if (piece != null)
+                pieces.put(pieceIndex, piece);
+        }
+        if (pieces.isEmpty())
+            return;
+
+        List<ByteBuffer> run = new ArrayList<>();
+        int runStart = pieces.firstKey();
+        int expectedIndex = runStart;
+        for (Map.Entry<Integer, byte[]> entry : pieces.entrySet()) {
+            if (entry.getKey() != expectedIndex) {
+                writeRun(runStart, run);
+                run.clear();
+                runStart = entry.getKey();
+            }
+            run.add(ByteBuffer.wrap(entry.getValue()));
+            expectedIndex = entry.getKey() + 1;
+        }
+        writeRun(runStart, run);
+
+        if (fsyncPolicy == FsyncPolicy.PER_BATCH)
+            channel.force(false);
+        if (resumeFile != null)
+            resumeFile.record(pieces);
+        pieces.forEach(pendingPieces::remove);
+    }
+
+    private void writeRun(int firstPieceIndex, List<ByteBuffer> run) throws IOException {
+        ByteBuffer[] buffers = run.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers)
+            remaining += buffer.remaining();
+        channel.position((long) firstPieceIndex * pieceSize);
+        while (remaining > 0)
+            remaining -= channel.write(buffers);
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw failure;
+    }
+}
@@ -0,0 +1,28 @@
+package org.networks.java.model;
+
+import org.networks.java.helper.Constants.MessageType;
+
+/**
+ * REQUEST or CANCEL for a single block.
+ */
+public class BlockMessage extends Message {
+
+    private final BlockRequest blockRequest;
+
+    public BlockRequest getBlockRequest() {
+        return blockRequest;
+    }
+
+    public BlockMessage(MessageType messageType, BlockRequest blockRequest) {
+        super(messageType, null);
+        this.blockRequest = blockRequest;
+    }
+
+    @Override
+    public String toString() {
+        return "Message Type: " + getMessageType() +
+                ", Piece: " + blockRequest.getPieceIndex() +
+                ", Offset: " + blockRequest.getOffset() +
+                ", Length: " + blockRequest.getLength();
+    }
+}
@@ -0,0 +1,50 @@
+package org.networks.java.model;
+
+import java.util.Objects;
+
+public class BlockRequest {
+
+    private final int pieceIndex;
+    private final int offset;
+    private final int length;
+
+    public int getPieceIndex() {
+        return pieceIndex;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public BlockRequest(int pieceIndex, int offset, int length) {
+        this.pieceIndex = pieceIndex;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof BlockRequest))
+            return false;
+        BlockRequest that = (BlockRequest) o;
+        return pieceIndex == that.pieceIndex && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(pieceIndex, offset, length);
+    }
+
+    @Override
+    public String toString() {
+        return "Piece: " + pieceIndex +
+                ", Offset: " + offset +
+                ", Length: " + length;
+    }
+}
@@ -0,0 +1,37 @@
+package org.networks.java.model;
+
+import org.networks.java.helper.Constants.MessageType;
+
+public class FileRegionMessage extends Message {
+
+    private final int pieceIndex;
+    private final int offset;
+    private final int length;
+
+    public int getPieceIndex() {
+        return pieceIndex;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public FileRegionMessage(int pieceIndex, int offset, int length) {
+        super(MessageType.PIECE, null);
+        this.pieceIndex = pieceIndex;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public String toString() {
+        return "Message Type: " + getMessageType() +
+                ", Piece: " + pieceIndex +
+                ", Offset: " + offset +
+                ", Length: " + length;
+    }
+}
@@ -5,12 +5,35 @@ import org.networks.java.helper.Constants;
 
 public class HandshakeMessage {
 
+    private static final int PEER_ID_OFFSET = Constants.HANDSHAKE_HEADER.length() + Constants.HANDSHAKE_ZERO_BITS_LEN;
+    private static final int INFO_HASH_OFFSET = PEER_ID_OFFSET + Constants.PEER_ID_LEN;
+
     private final byte[] zeroBits;
     private final String peerID;
+    private final String infoHash;
 
     public HandshakeMessage(String peerID) {
-        this.zeroBits = new byte[10];
+        this(peerID, null);
+    }
+
+    /**
+     * A handshake that names the swarm it is for; the info-hash follows the peer id.
+     */
+    public HandshakeMessage(String peerID, String infoHash) {
+        this.zeroBits = new byte[Constants.HANDSHAKE_ZERO_BITS_LEN];
         this.peerID = peerID;
+        this.infoHash = infoHash;
+    }
+
+    public static String getPeerId(String handshake) {
+        return handshake.substring(PEER_ID_OFFSET, INFO_HASH_OFFSET);
+    }
+
+    /**
+     * Returns the swarm a received handshake is for, or null if it carries none.
+     */
+    public static String getInfoHash(String handshake) {
+        return handshake.length() > INFO_HASH_OFFSET ? handshake.substring(INFO_HASH_OFFSET) : null;
     }
 
     @Override
@@ -19,6 +42,8 @@ public class HandshakeMessage {
         builder.append(Constants.HANDSHAKE_HEADER);
         builder.append(new String(zeroBits));
         builder.append(peerID);
+        if (infoHash != null)
+            builder.append(infoHash);
         return builder.toString();
     }
-}
\ No newline at end of file
+}
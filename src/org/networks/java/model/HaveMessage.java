@@ -0,0 +1,23 @@
+package org.networks.java.model;
+
+import org.networks.java.helper.Constants.MessageType;
+
+public class HaveMessage extends Message {
+
+    private final int pieceIndex;
+
+    public int getPieceIndex() {
+        return pieceIndex;
+    }
+
+    public HaveMessage(int pieceIndex) {
+        super(MessageType.HAVE, null);
+        this.pieceIndex = pieceIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "Message Type: " + getMessageType() +
+                ", Piece: " + pieceIndex;
+    }
+}
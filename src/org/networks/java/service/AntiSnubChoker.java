@@ -0,0 +1,24 @@
+package org.networks.java.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tit-for-tat that withholds regular slots from neighbours snubbing us, i.e. ones we are interested in
+ * that have not sent a block within the snub timeout. They can still win the optimistic unchoke.
+ */
+class AntiSnubChoker extends TitForTatChoker {
+
+	private final long snubTimeoutNanos;
+
+	AntiSnubChoker(long snubTimeoutNanos) {
+		this.snubTimeoutNanos = snubTimeoutNanos;
+	}
+
+	@Override
+	public <T extends Neighbour> List<T> selectPreferred(List<T> candidates, int slots) {
+		List<T> reciprocating = new ArrayList<>(candidates);
+		reciprocating.removeIf(neighbour -> neighbour.isSnubbing(snubTimeoutNanos));
+		return super.selectPreferred(reciprocating, slots);
+	}
+}
@@ -0,0 +1,12 @@
+package org.networks.java.service;
+
+import java.util.List;
+
+/**
+ * Picks which neighbours get the regular upload slots for the next unchoking interval. Candidates are
+ * already restricted to connected, interested neighbours that still need pieces.
+ */
+interface Choker {
+
+	<T extends Neighbour> List<T> selectPreferred(List<T> candidates, int slots);
+}
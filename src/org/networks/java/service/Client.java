@@ -1,54 +1,91 @@
 package org.networks.java.service;
 
 import org.networks.java.helper.Constants;
+import org.networks.java.helper.MessageCodec;
 import org.networks.java.helper.MessageStream;
+import org.networks.java.helper.RateMeter;
+import org.networks.java.helper.TokenBucket;
+import org.networks.java.model.BlockMessage;
+import org.networks.java.model.BlockRequest;
+import org.networks.java.model.FileRegionMessage;
 import org.networks.java.model.HandshakeMessage;
 import org.networks.java.model.Message;
 import org.networks.java.model.PeerInfo;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import static org.networks.java.helper.Constants.MessageType.*;
 
-public class Client implements Runnable {
+public class Client implements Runnable, Neighbour, MessageCodec.FrameHandler {
 
 	@Override
 	public void run() {
+		receiveBuffer = peer.getBufferPool().acquire().flip();
+		sendBuffer = peer.getBufferPool().acquire();
 		try {
 			do {
 				processHandShake();
 			} while (!connectionEstablished);
 			sendBitFieldMsg();
 
-			new Thread(() -> {
+			peer.getConnectionExecutor().execute(() -> {
 				try {
 					pushMsgToQueue();
 				} catch (InterruptedException | IOException ex) {
 				}
-			}).start();
+			});
 
 			while (!shutdown)
 				processMessage();
 
 		} catch (EOFException e) {
-			msgStreamQueue.add(new Message(null, null));
+			sendQueue.add(new Message(null, null));
 		} catch (Exception ex) {
+		} finally {
+			onDisconnected();
+			peer.getBufferPool().release(receiveBuffer);
+			peer.getSession().onConnectionClosed();
 		}
 	}
 
 	private void processMessage() throws IOException {
-		int messageLength = msgStream.getInputStream().readInt();
-		Constants.MessageType messageType = getMessageValue(msgStream.getInputStream().readByte());
+		ensureReadable(MessageCodec.FRAME_HEADER_LEN);
+		int frameLength = MessageCodec.getFrameLength(receiveBuffer);
+		ensureReadable(frameLength);
+		onBytesReceived(frameLength);
+		if (MessageCodec.decode(receiveBuffer, this) == PIECE)
+			pause(reserveDownload(frameLength - MessageCodec.FRAME_HEADER_LEN - MessageCodec.PIECE_HEADER_PAYLOAD_LEN));
+	}
+
+	private void ensureReadable(int length) throws IOException {
+		if (receiveBuffer.remaining() >= length)
+			return;
+		receiveBuffer.compact();
+		if (receiveBuffer.capacity() < length) {
+			ByteBuffer grown = ByteBuffer.allocate(length);
+			grown.put(receiveBuffer.flip());
+			peer.getBufferPool().release(receiveBuffer);
+			receiveBuffer = grown;
+		}
+		while (receiveBuffer.position() < length) {
+			if (socket.getChannel().read(receiveBuffer) == -1)
+				throw new EOFException();
+		}
+		receiveBuffer.flip();
+	}
 
+	@Override
+	public void handleMessage(Constants.MessageType messageType, ByteBuffer payload) throws IOException {
 		switch (messageType) {
 			case CHOKE:
 				readChokeMsg();
@@ -63,20 +100,29 @@ public class Client implements Runnable {
 				readNotInterested();
 				break;
 			case HAVE:
-				readHaveMsg();
+				readHaveMsg(payload.getInt());
 				break;
 			case BITFIELD:
-				readBitFieldMsg(messageLength);
+				readBitFieldMsg(getRemainingBytes(payload));
 				break;
 			case REQUEST:
-				readRequestMsg();
+				readRequestMsg(payload.getInt(), payload.getInt(), payload.getInt());
 				break;
 			case PIECE:
-				readPieceMsg(messageLength);
+				readPieceMsg(payload.getInt(), payload.getInt(), payload);
+				break;
+			case CANCEL:
+				readCancelMsg(payload.getInt(), payload.getInt(), payload.getInt());
 				break;
 		}
 	}
 
+	private static byte[] getRemainingBytes(ByteBuffer payload) {
+		byte[] bytes = new byte[payload.remaining()];
+		payload.get(bytes);
+		return bytes;
+	}
+
 	private void processHandShake() throws IOException {
 		sendHandshakeMsg();
 		while (!connectionEstablished)
@@ -85,117 +131,234 @@ public class Client implements Runnable {
 		peer.addClient(this);
 	}
 
+	/**
+	 * Drains everything queued into the send buffer and writes it in as few syscalls as possible, flushing
+	 * when the queue runs dry or the buffer holds WriteCoalesceBytes.
+	 */
 	private void pushMsgToQueue() throws InterruptedException, IOException {
-		while (true) {
-			Message msg = msgStreamQueue.take();
-			if (msg.getMessageType() == null)
-				return;
-			sendMsg(msg);
+		int coalesceBytes = Math.min(peer.getCommonConfig().getWriteCoalesceBytes(), sendBuffer.capacity());
+		try {
+			while (true) {
+				Message msg = sendQueue.take();
+				sendBuffer.clear();
+				do {
+					if (msg.getMessageType() == null) {
+						flushSendBuffer();
+						return;
+					}
+					if (msg.getMessageType() == PIECE) {
+						long delayNanos = reserveUpload(MessageCodec.getPiecePayloadLength(msg));
+						if (delayNanos > 0) {
+							flushSendBuffer();
+							TimeUnit.NANOSECONDS.sleep(delayNanos);
+						}
+					}
+					bufferMsg(msg);
+					if (sendBuffer.position() >= coalesceBytes)
+						flushSendBuffer();
+				} while ((msg = sendQueue.poll()) != null);
+				flushSendBuffer();
+			}
+		} finally {
+			sendQueue.close();
+			peer.getBufferPool().release(sendBuffer);
 		}
 	}
 
 	private void readChokeMsg() {
-		P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] is choked by [" + neighborPeerInfo.getPeerId() + "].");
-		lastDownloadRateLock.writeLock().lock();
-		lastDownloadRate = (float) downloadedPiecesSinceUnchoked / Duration.between(Instant.now(), lastUnchokedByNeighborAt).getSeconds();
-		downloadedPiecesSinceUnchoked = 0;
-		lastDownloadRateLock.writeLock().unlock();
+		peer.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] is choked by [" + neighborPeerInfo.getPeerId() + "].");
+		chokedByNeighbor = true;
+		requestPipeline.clear().forEach(peer::releaseBlockRequest);
 	}
 
 	private void readUnchokeMsg() {
-		P2PLogger.getLogger().log(Level.INFO, "Peer " + peer.getPeerInfo().getPeerId() + " is unchoked by [" + neighborPeerInfo.getPeerId() + "].");
-		lastUnchokedByNeighborAt = Instant.now();
+		peer.getLogger().log(Level.INFO, "Peer " + peer.getPeerInfo().getPeerId() + " is unchoked by [" + neighborPeerInfo.getPeerId() + "].");
+		chokedByNeighbor = false;
 		requestPiece();
 	}
 
 	private void readInterestedMsg() {
-		P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] received the `interested` message from [" + neighborPeerInfo.getPeerId() + "].");
+		peer.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] received the `interested` message from [" + neighborPeerInfo.getPeerId() + "].");
 		peer.addPeersInterestedInMe(neighborPeerInfo.getPeerId());
 	}
 
 	private void readNotInterested() {
-		P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] received a `not interested` message from [" + neighborPeerInfo.getPeerId() + "].");
+		peer.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] received a `not interested` message from [" + neighborPeerInfo.getPeerId() + "].");
 		peer.removeFromPeersInterestedInMe(neighborPeerInfo.getPeerId());
 	}
 
-	private void readHaveMsg() throws IOException {
-		P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] received the `have` message from [" + neighborPeerInfo.getPeerId() + "].");
-		Integer pieceIndex = msgStream.read4ByteIntData();
+	private void readHaveMsg(int pieceIndex) {
+		peer.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] received the `have` message from [" + neighborPeerInfo.getPeerId() + "].");
 		peer.updateNeighborPieceIndex(neighborPeerInfo.getPeerId(), pieceIndex);
+		// A HAVE can only add to what the neighbour offers, so it can only turn interest on.
 		if (!peer.hasPiece(pieceIndex)) {
-			Message msg = new Message(INTERESTED, null);
-			msgStreamQueue.add(msg);
+			setInterested(true);
+			requestPiece();
 		} else {
-			Message msg = new Message(NOT_INTERESTED, null);
-			msgStreamQueue.add(msg);
+			peer.getSuppressedInterestMessages().increment();
 		}
 	}
 
-	private void readBitFieldMsg(int messageLength) throws IOException {
-		byte[] bitFieldByte = new byte[messageLength];
-		msgStream.getInputStream().readFully(bitFieldByte);
+	private void readBitFieldMsg(byte[] bitFieldByte) {
 		peer.setNeighborBitField(neighborPeerInfo.getPeerId(), bitFieldByte);
-		if (peer.getPieceRequestIndex(neighborPeerInfo.getPeerId()) != -1) {
-			Message msg = new Message(INTERESTED, null);
-			msgStreamQueue.add(msg);
-		} else {
-			Message msg = new Message(NOT_INTERESTED, null);
-			msgStreamQueue.add(msg);
+		setInterested(peer.isInterestedIn(neighborPeerInfo.getPeerId()));
+	}
+
+	/**
+	 * Sends INTERESTED or NOT_INTERESTED only when our interest in the neighbour actually changes.
+	 */
+	private void setInterested(boolean interested) {
+		// A lock rather than a monitor: queueMsg may park, which would pin a virtual thread.
+		interestLock.lock();
+		try {
+			if (amInterested == interested) {
+				peer.getSuppressedInterestMessages().increment();
+				return;
+			}
+			amInterested = interested;
+			if (interested)
+				lastBlockReceivedNanos = System.nanoTime();
+			queueMsg(MessageCodec.controlMessage(interested ? INTERESTED : NOT_INTERESTED));
+		} finally {
+			interestLock.unlock();
 		}
 	}
 
-	private void readRequestMsg() throws IOException {
-		Integer pieceIndex = msgStream.read4ByteIntData();
-		if (isChoked)
+	private void readRequestMsg(int pieceIndex, int offset, int length) throws IOException {
+		if (isChoked || !peer.hasPiece(pieceIndex))
 			return;
+		if (offset < 0 || length <= 0 || length > peer.getFileDownloader().getPieceLength(pieceIndex) - offset)
+			return;
+		if (supportsFileRegions() && peer.getFileDownloader().isPieceOnDisk(pieceIndex)) {
+			queueData(new FileRegionMessage(pieceIndex, offset, length));
+			return;
+		}
 		byte[] piece = peer.getPiece(pieceIndex);
 		if (piece != null) {
-			ByteBuffer byteBuffer = ByteBuffer.allocate(4 + piece.length);
+			ByteBuffer byteBuffer = ByteBuffer.allocate(Constants.PIECE_INDEX_PAYLOAD_LEN + Constants.BLOCK_OFFSET_PAYLOAD_LEN + length);
 			byteBuffer.putInt(pieceIndex);
-			byteBuffer.put(piece);
-			Message msg = new Message(PIECE, byteBuffer.array());
-			msgStreamQueue.add(msg);
+			byteBuffer.putInt(offset);
+			byteBuffer.put(piece, offset, length);
+			queueData(new Message(PIECE, byteBuffer.array()));
 		}
 	}
 
-	private void readPieceMsg(int messageLength) throws IOException {
-		Integer pieceIndex = msgStream.read4ByteIntData();
-		byte[] piece = new byte[messageLength - 4];
-		msgStream.getInputStream().readFully(piece);
-		boolean pieceAdded = peer.addPiece(pieceIndex, piece);
-		downloadedPiecesSinceUnchoked++;
-		if (pieceAdded) {
-			P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] has downloaded the piece [" + pieceIndex + "] from [" + neighborPeerInfo.getPeerId() + "]. "
-				+ "Now the number of pieces it has is [" + peer.getFileDownloader().getFilePieces().size() + "].");
-		}
+	private void readPieceMsg(int pieceIndex, int offset, ByteBuffer block) throws IOException {
+		lastBlockReceivedNanos = System.nanoTime();
+		requestPipeline.onBlockReceived(new BlockRequest(pieceIndex, offset, block.remaining()));
+		if (!peer.addBlock(neighborPeerInfo.getPeerId(), pieceIndex, offset, block, this::onVerificationStarted))
+			awaitVerification();
 		requestPiece();
 	}
 
+	/**
+	 * The piece this block completed is parked until a verification worker is free. Stop reading meanwhile:
+	 * the NIO connection drops OP_READ, the blocking reader waits on its own thread.
+	 */
+	private void awaitVerification() throws IOException {
+		if (nioConnection != null) {
+			nioConnection.pauseReadingForVerification();
+			return;
+		}
+		try {
+			verificationStarted.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a verification worker");
+		}
+	}
+
+	private void onVerificationStarted() {
+		if (nioConnection != null)
+			nioConnection.resumeReadingAfterVerification();
+		else
+			verificationStarted.release();
+	}
+
+	private void readCancelMsg(int pieceIndex, int offset, int length) {
+		sendQueue.removeData(msg -> isBlockMsg(msg, pieceIndex, offset, length));
+	}
+
+	private static boolean isBlockMsg(Message msg, int pieceIndex, int offset, int length) {
+		if (msg instanceof FileRegionMessage) {
+			FileRegionMessage region = (FileRegionMessage) msg;
+			return region.getPieceIndex() == pieceIndex && region.getOffset() == offset && region.getLength() == length;
+		}
+		if (msg.getMessagePacket() == null)
+			return false;
+		ByteBuffer payload = ByteBuffer.wrap(msg.getMessagePacket());
+		return payload.getInt(0) == pieceIndex && payload.getInt(Constants.PIECE_INDEX_PAYLOAD_LEN) == offset
+			&& payload.capacity() - Constants.PIECE_INDEX_PAYLOAD_LEN - Constants.BLOCK_OFFSET_PAYLOAD_LEN == length;
+	}
+
 	private void receiveHandshakeMsg() throws IOException {
-		String receivedMsg = msgStream.getInputStream().readUTF();
-		String neighborPeerId = receivedMsg.substring(20, 24); //TODO change
-		String sentMsg = new HandshakeMessage(neighborPeerId).toString();
+		verifyHandshakeMsg(msgStream.getInputStream().readUTF());
+	}
+
+	void onHandshake(String receivedMsg) {
+		verifyHandshakeMsg(receivedMsg);
+		if (connectionEstablished)
+			onConnectionEstablished();
+	}
+
+	void onConnectionEstablished() {
+		peer.addClient(this);
+		if (peer.hasOnePiece())
+			queueMsg(new Message(BITFIELD, peer.getBitField()));
+	}
+
+	private void verifyHandshakeMsg(String receivedMsg) {
+		String neighborPeerId = HandshakeMessage.getPeerId(receivedMsg);
+		String sentMsg = new HandshakeMessage(neighborPeerId, peer.getInfoHash()).toString();
 
 		if (sentMsg.equalsIgnoreCase(receivedMsg)) {
 			connectionEstablished = true;
-			P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] makes a connection to Peer [" + neighborPeerInfo.getPeerId() + "].");
+			peer.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] makes a connection to Peer [" + neighborPeerInfo.getPeerId() + "].");
 		}
 	}
 
 	private void sendMsg(Message msg) throws IOException {
-		int msgLen = msg.getMessagePacket() != null ? msg.getMessagePacket().length : 0;
+		sendBuffer.clear();
+		bufferMsg(msg);
+		flushSendBuffer();
+	}
+
+	private void bufferMsg(Message msg) throws IOException {
+		SocketChannel channel = socket.getChannel();
+		if (msg.getMessagePacket() != null && msg.getMessagePacket().length > MessageCodec.MAX_COPIED_PAYLOAD_LEN) {
+			if (sendBuffer.remaining() < MessageCodec.FRAME_HEADER_LEN)
+				flushSendBuffer();
+			MessageCodec.encodeHeader(msg, sendBuffer);
+			ByteBuffer[] buffers = {sendBuffer.flip(), ByteBuffer.wrap(msg.getMessagePacket())};
+			long remaining = buffers[0].remaining() + buffers[1].remaining();
+			onBytesSent(remaining);
+			while (remaining > 0)
+				remaining -= channel.write(buffers);
+			sendBuffer.clear();
+			return;
+		}
 
-		ByteBuffer byteBuffer = ByteBuffer.allocate(msgLen + 5);
-		byteBuffer.putInt(msgLen);
-		byteBuffer.put((byte) msg.getMessageType().ordinal());
+		if (MessageCodec.getEncodedLength(msg) > sendBuffer.remaining())
+			flushSendBuffer();
+		MessageCodec.encode(msg, sendBuffer);
+		if (msg instanceof FileRegionMessage) {
+			FileRegionMessage region = (FileRegionMessage) msg;
+			flushSendBuffer();
+			peer.getFileDownloader().transferBlock(region.getPieceIndex(), region.getOffset(), region.getLength(), channel);
+			onBytesSent(region.getLength());
+		}
+	}
 
-		if (msg.getMessagePacket() != null)
-			byteBuffer.put(msg.getMessagePacket());
-		msgStream.getOutputStream().write(byteBuffer.array());
+	private void flushSendBuffer() throws IOException {
+		sendBuffer.flip();
+		onBytesSent(sendBuffer.remaining());
+		while (sendBuffer.hasRemaining())
+			socket.getChannel().write(sendBuffer);
+		sendBuffer.clear();
 	}
 
 	private void sendHandshakeMsg() throws IOException {
-		HandshakeMessage handshakeMessage = new HandshakeMessage(peer.getPeerInfo().getPeerId());
+		HandshakeMessage handshakeMessage = new HandshakeMessage(peer.getPeerInfo().getPeerId(), peer.getInfoHash());
 		msgStream.getOutputStream().writeUTF(handshakeMessage.toString());
 	}
 
@@ -206,48 +369,181 @@ public class Client implements Runnable {
 		}
 	}
 
+	/**
+	 * Announces a newly completed piece. The HAVE is skipped when the neighbour already has the piece and
+	 * suppression is enabled; a piece we now hold can also end our interest in the neighbour.
+	 */
+	void onPieceAdded(int pieceIndex) {
+		boolean neighbourHasPiece = peer.neighbourHasPiece(neighborPeerInfo.getPeerId(), pieceIndex);
+		if (neighbourHasPiece && peer.getCommonConfig().isSuppressRedundantHaves()) {
+			havesSuppressed = true;
+			peer.getSuppressedHaveMessages().increment();
+		} else {
+			sendHaveMsg(pieceIndex);
+		}
+		if (neighbourHasPiece && amInterested && !peer.isInterestedIn(neighborPeerInfo.getPeerId()))
+			setInterested(false);
+	}
+
+	/**
+	 * Once the file is complete, a neighbour that missed suppressed HAVEs gets a fresh BITFIELD so it can
+	 * still tell that we are done.
+	 */
+	void onDownloadComplete() {
+		if (havesSuppressed)
+			queueMsg(new Message(BITFIELD, peer.getBitField()));
+	}
+
 	public void sendHaveMsg(int pieceIndex) {
-		ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-		byteBuffer.putInt(pieceIndex);
-		Message msg = new Message(HAVE, byteBuffer.array());
-		msgStreamQueue.add(msg);
+		queueMsg(MessageCodec.haveMessage(pieceIndex));
 	}
 
+	@Override
 	public void chokeNeighbor() {
+		if (isChoked)
+			return;
 		isChoked = true;
-		Message msg = new Message(CHOKE, null);
-		msgStreamQueue.add(msg);
+		// A choked neighbour discards its outstanding requests, so blocks still queued for it are wasted.
+		sendQueue.removeData(msg -> true);
+		queueMsg(MessageCodec.controlMessage(CHOKE));
 	}
 
+	@Override
 	public void unchokeNeighbor() {
+		if (!isChoked)
+			return;
 		isChoked = false;
-		Message msg = new Message(UNCHOKE, null);
-		msgStreamQueue.add(msg);
+		queueMsg(MessageCodec.controlMessage(UNCHOKE));
 	}
 
 	private void requestPiece() {
-		int pieceIndex = peer.getPieceRequestIndex(neighborPeerInfo.getPeerId());
-		if (pieceIndex == -1)
+		while (!chokedByNeighbor && requestPipeline.hasCapacity()) {
+			BlockRequest blockRequest = peer.claimBlockRequest(neighborPeerInfo.getPeerId());
+			if (blockRequest == null)
+				blockRequest = peer.claimEndgameBlockRequest(neighborPeerInfo.getPeerId(), requestPipeline::contains);
+			if (blockRequest == null)
+				return;
+			// Lost the race for the slot or the block to another thread filling this pipeline.
+			if (!requestPipeline.tryReserve(blockRequest)) {
+				peer.releaseBlockRequest(blockRequest);
+				return;
+			}
+			queueMsg(new BlockMessage(REQUEST, blockRequest));
+		}
+	}
+
+	void onEndgame() {
+		requestPiece();
+	}
+
+	void onPieceReleased() {
+		requestPiece();
+	}
+
+	public void cancelBlockRequest(BlockRequest blockRequest) {
+		if (requestPipeline.cancel(blockRequest))
+			queueMsg(new BlockMessage(CANCEL, blockRequest));
+	}
+
+	void onDisconnected() {
+		if (nioConnection != null)
+			sendQueue.close();
+		requestPipeline.clear().forEach(peer::releaseBlockRequest);
+		peer.removeNeighbourAvailability(neighborPeerInfo.getPeerId());
+	}
+
+	private void queueMsg(Message msg) {
+		sendQueue.add(msg);
+		if (nioConnection != null)
+			nioConnection.requestWrite();
+	}
+
+	/**
+	 * Queues block data against the send budget. The reader thread of a blocking connection waits for room,
+	 * which stops it reading further REQUESTs; the NIO connection stops parsing REQUESTs before it gets here.
+	 */
+	private void queueData(Message msg) throws InterruptedIOException {
+		if (nioConnection != null) {
+			queueMsg(msg);
 			return;
-		ByteBuffer byteBuffer = ByteBuffer.allocate(4);
-		byteBuffer.putInt(pieceIndex);
-		Message msg = new Message(REQUEST, byteBuffer.array());
-		msgStreamQueue.add(msg);
+		}
+		try {
+			sendQueue.put(msg);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for send queue capacity");
+		}
+	}
+
+	Message pollMsg() {
+		return sendQueue.poll();
+	}
+
+	boolean hasQueuedMsg() {
+		return !sendQueue.isEmpty();
+	}
+
+	boolean hasSendCapacity() {
+		return sendQueue.hasCapacity();
 	}
 
-	public float getDownloadRate() {
-		lastDownloadRateLock.readLock().lock();
+	private boolean supportsFileRegions() {
+		return nioConnection != null || (socket != null && socket.getChannel() != null);
+	}
+
+	void onBytesReceived(long bytes) {
+		downloadMeter.update(bytes);
+	}
+
+	void onBytesSent(long bytes) {
+		uploadMeter.update(bytes);
+	}
+
+	long reserveUpload(int bytes) {
+		return Math.max(peer.getUploadLimit().reserve(bytes), uploadLimit.reserve(bytes));
+	}
+
+	long reserveDownload(int bytes) {
+		return Math.max(peer.getDownloadLimit().reserve(bytes), downloadLimit.reserve(bytes));
+	}
+
+	public void setRateLimits(long maxUploadRate, long maxDownloadRate) {
+		uploadLimit.setRate(maxUploadRate);
+		downloadLimit.setRate(maxDownloadRate);
+	}
+
+	private static void pause(long nanos) throws InterruptedIOException {
 		try {
-			return lastDownloadRate;
-		} finally {
-			lastDownloadRateLock.readLock().unlock();
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while throttling download");
 		}
 	}
 
+	@Override
+	public boolean isSnubbing(long timeoutNanos) {
+		return amInterested && System.nanoTime() - lastBlockReceivedNanos > timeoutNanos;
+	}
+
+	@Override
+	public double getDownloadRate() {
+		return downloadMeter.getRate();
+	}
+
+	@Override
+	public double getUploadRate() {
+		return uploadMeter.getRate();
+	}
+
 	public void shutdown() {
 		try {
 			shutdown = true;
-			while (!msgStreamQueue.isEmpty()) ;
+			while (!sendQueue.isEmpty()) ;
+			if (nioConnection != null) {
+				nioConnection.close();
+				return;
+			}
 			msgStream.getOutputStream().flush();
 			if (socket != null) {
 				msgStream.getInputStream().close();
@@ -258,27 +554,42 @@ public class Client implements Runnable {
 		}
 	}
 
-	private final ReadWriteLock lastDownloadRateLock = new ReentrantReadWriteLock();
+	private final ReentrantLock interestLock = new ReentrantLock();
+	private final Semaphore verificationStarted = new Semaphore(0);
 
 	private boolean connectionEstablished;
-	private boolean isChoked;
+	private volatile boolean amInterested;
+	private volatile boolean havesSuppressed;
+	private volatile boolean isChoked;
+	private volatile boolean chokedByNeighbor;
 	private boolean shutdown;
-	private int downloadedPiecesSinceUnchoked;
-	private float lastDownloadRate;
-
-	private Instant lastUnchokedByNeighborAt;
+	private volatile long lastBlockReceivedNanos;
+
+	private ByteBuffer receiveBuffer;
+	private ByteBuffer sendBuffer;
+	private RateMeter downloadMeter;
+	private RateMeter uploadMeter;
+	private TokenBucket uploadLimit;
+	private TokenBucket downloadLimit;
 	private MessageStream msgStream;
 
 	private Peer peer;
 	private PeerInfo neighborPeerInfo;
 	private Socket socket;
+	private NioConnection nioConnection;
 
-	private LinkedBlockingQueue<Message> msgStreamQueue;
+	private SendQueue sendQueue;
+	private RequestPipeline requestPipeline;
 
 	public PeerInfo getNeighborPeerInfo() {
 		return neighborPeerInfo;
 	}
 
+	@Override
+	public String getNeighborPeerId() {
+		return neighborPeerInfo.getPeerId();
+	}
+
 	public void setNeighborPeerInfo(PeerInfo neighborPeerInfo) {
 		this.neighborPeerInfo = neighborPeerInfo;
 	}
@@ -290,7 +601,7 @@ public class Client implements Runnable {
 	public Client(final Peer peer, final PeerInfo neighborPeerInfo) {
 		socket = null;
 		try {
-			socket = new Socket(neighborPeerInfo.getHostName(), neighborPeerInfo.getPortNumber());
+			socket = SocketChannel.open(new InetSocketAddress(neighborPeerInfo.getHostName(), neighborPeerInfo.getPortNumber())).socket();
 		} catch (IOException e) {
 		}
 		initializeClient(peer, neighborPeerInfo, socket, new MessageStream(socket), false);
@@ -300,19 +611,30 @@ public class Client implements Runnable {
 		initializeClient(peer, neighborPeerInfo, socket, msgStream, true);
 	}
 
+	Client(Peer peer, PeerInfo neighborPeerInfo, NioConnection nioConnection, boolean connectionEstablished) {
+		initializeClient(peer, neighborPeerInfo, null, null, connectionEstablished);
+		this.nioConnection = nioConnection;
+	}
+
 	private void initializeClient(Peer peer, PeerInfo neighborPeerInfo, Socket socket, MessageStream msgStream, boolean connectionEstablished) {
 		this.connectionEstablished = connectionEstablished;
 		this.isChoked = true;
+		this.chokedByNeighbor = true;
 		this.shutdown = false;
-		this.downloadedPiecesSinceUnchoked = 0;
-		this.lastDownloadRate = 0;
+		this.lastBlockReceivedNanos = System.nanoTime();
+		this.downloadMeter = new RateMeter(peer.getCommonConfig().getRateWindowSeconds(), peer.getDownloadMeter());
+		this.uploadMeter = new RateMeter(peer.getCommonConfig().getRateWindowSeconds(), peer.getUploadMeter());
+		this.uploadLimit = new TokenBucket(peer.getSession().getMaxPeerUploadRate());
+		this.downloadLimit = new TokenBucket(peer.getSession().getMaxPeerDownloadRate());
 
 		this.msgStream = msgStream;
 		this.peer = peer;
 		this.neighborPeerInfo = neighborPeerInfo;
 		this.socket = socket;
 
-		this.msgStreamQueue = new LinkedBlockingQueue<>();
+		this.sendQueue = new SendQueue(peer.getCommonConfig().getSendQueueBytes());
+		this.requestPipeline = new RequestPipeline(peer.getCommonConfig().getPipelineDepth(), peer.getCommonConfig().getMaxPipelineDepth(),
+			peer.getCommonConfig().isAdaptivePipeline(), peer.getCommonConfig().getBlockSize());
 	}
 
 }
\ No newline at end of file
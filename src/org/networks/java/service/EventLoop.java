@@ -0,0 +1,117 @@
+package org.networks.java.service;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single selector thread multiplexing the non-blocking connections assigned to it.
+ */
+class EventLoop implements Runnable {
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks;
+	private final PriorityQueue<ScheduledTask> timers;
+	private final Thread thread;
+
+	private volatile boolean running;
+
+	EventLoop(String name) throws IOException {
+		selector = Selector.open();
+		tasks = new ConcurrentLinkedQueue<>();
+		timers = new PriorityQueue<>();
+		thread = new Thread(this, name);
+		running = true;
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs {@code task} on this loop after {@code delayNanos}. Must be called from the loop thread.
+	 */
+	void schedule(Runnable task, long delayNanos) {
+		timers.add(new ScheduledTask(System.nanoTime() + delayNanos, task));
+	}
+
+	void register(NioConnection connection) {
+		execute(() -> connection.register(selector));
+	}
+
+	void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select(getSelectTimeoutMillis());
+				runTasks();
+				runTimers();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					((NioConnection) key.attachment()).handle(key);
+				}
+			}
+		} catch (IOException e) {
+		} finally {
+			for (SelectionKey key : selector.keys())
+				((NioConnection) key.attachment()).closeNow();
+			try {
+				selector.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null)
+			task.run();
+	}
+
+	private long getSelectTimeoutMillis() {
+		ScheduledTask next = timers.peek();
+		if (next == null)
+			return 0;
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+	}
+
+	private void runTimers() {
+		long now = System.nanoTime();
+		while (!timers.isEmpty() && timers.peek().deadline - now <= 0)
+			timers.poll().task.run();
+	}
+
+	private static final class ScheduledTask implements Comparable<ScheduledTask> {
+
+		private final long deadline;
+		private final Runnable task;
+
+		ScheduledTask(long deadline, Runnable task) {
+			this.deadline = deadline;
+			this.task = task;
+		}
+
+		@Override
+		public int compareTo(ScheduledTask other) {
+			return Long.compare(deadline - other.deadline, 0);
+		}
+	}
+}
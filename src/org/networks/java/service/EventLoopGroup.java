@@ -0,0 +1,44 @@
+package org.networks.java.service;
+
+import org.networks.java.model.PeerInfo;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool of event loops shared by every swarm; connections are spread over the loops round-robin.
+ */
+public class EventLoopGroup {
+
+	private final Session session;
+	private final EventLoop[] eventLoops;
+	private final AtomicInteger nextLoop;
+
+	public EventLoopGroup(Session session, int threads) throws IOException {
+		this.session = session;
+		eventLoops = new EventLoop[threads];
+		for (int i = 0; i < threads; i++)
+			eventLoops[i] = new EventLoop("event-loop-" + session.getPeerInfo().getPeerId() + "-" + i);
+		nextLoop = new AtomicInteger();
+	}
+
+	public void start() {
+		for (EventLoop eventLoop : eventLoops)
+			eventLoop.start();
+	}
+
+	/**
+	 * Registers a connection. Outgoing connections know their swarm up front; incoming ones pass null and
+	 * are routed once their handshake has been read.
+	 */
+	public void register(SocketChannel channel, PeerInfo neighborPeerInfo, Peer swarm) throws IOException {
+		EventLoop eventLoop = eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoops.length)];
+		eventLoop.register(new NioConnection(session, swarm, channel, eventLoop, neighborPeerInfo));
+	}
+
+	public void shutdown() {
+		for (EventLoop eventLoop : eventLoops)
+			eventLoop.shutdown();
+	}
+}
@@ -0,0 +1,29 @@
+package org.networks.java.service;
+
+/**
+ * What the choking logic needs to know about, and do to, a neighbour. Implemented by {@link Client} for real
+ * connections and by the simulator for simulated ones.
+ */
+public interface Neighbour {
+
+	String getNeighborPeerId();
+
+	/**
+	 * Rate in bytes per second at which the neighbour has been sending us data.
+	 */
+	double getDownloadRate();
+
+	/**
+	 * Rate in bytes per second at which we have been sending the neighbour data.
+	 */
+	double getUploadRate();
+
+	/**
+	 * Whether we are interested in the neighbour but it has not sent a block within the timeout.
+	 */
+	boolean isSnubbing(long timeoutNanos);
+
+	void chokeNeighbor();
+
+	void unchokeNeighbor();
+}
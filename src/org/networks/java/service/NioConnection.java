@@ -0,0 +1,388 @@
+package org.networks.java.service;
+
+import org.networks.java.helper.Constants;
+import org.networks.java.helper.MessageCodec;
+import org.networks.java.model.FileRegionMessage;
+import org.networks.java.model.HandshakeMessage;
+import org.networks.java.model.Message;
+import org.networks.java.model.PeerInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Non-blocking side of a neighbour connection. Frames are parsed incrementally from the read buffer and
+ * handed to the {@link Client}, whose outbound queue is drained into the write buffer whenever the socket
+ * is writable.
+ */
+class NioConnection {
+
+	private static final int HANDSHAKE_LEN_LEN = 2;
+	private static final int FRAME_HEADER_LEN = MessageCodec.FRAME_HEADER_LEN;
+
+	private final Session session;
+	private final SocketChannel channel;
+	private final EventLoop eventLoop;
+	private final AtomicBoolean writeRequested;
+	private final int coalesceBytes;
+
+	private SelectionKey key;
+	private Peer peer;
+	private Client client;
+	private boolean handshakeReceived;
+	private boolean closeRequested;
+	private boolean closed;
+	private boolean readThrottled;
+	private boolean requestsBlocked;
+	private boolean verificationPending;
+	private boolean writeThrottled;
+	private boolean uploadReserved;
+
+	private ByteBuffer readBuffer;
+	private int requiredReadCapacity;
+
+	private ByteBuffer writeBuffer;
+	private Message pendingMsg;
+	private FileRegionMessage pendingRegion;
+	private long pendingRegionOffset;
+
+	NioConnection(Session session, Peer peer, SocketChannel channel, EventLoop eventLoop, PeerInfo neighborPeerInfo) throws IOException {
+		this.session = session;
+		this.peer = peer;
+		this.channel = channel;
+		this.eventLoop = eventLoop;
+		writeRequested = new AtomicBoolean();
+		coalesceBytes = session.getCommonConfig().getWriteCoalesceBytes();
+		readBuffer = session.getBufferPool().acquire();
+		writeBuffer = session.getBufferPool().acquire().flip();
+
+		channel.configureBlocking(false);
+		if (neighborPeerInfo != null) {
+			client = new Client(peer, neighborPeerInfo, this, false);
+			appendToWriteBuffer(encodeHandshake());
+		}
+	}
+
+	void register(Selector selector) {
+		try {
+			int ops = SelectionKey.OP_READ | (hasPendingWrite() ? SelectionKey.OP_WRITE : 0);
+			key = channel.register(selector, ops, this);
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	void handle(SelectionKey key) {
+		try {
+			if (key.isValid() && key.isReadable())
+				onReadable();
+			if (key.isValid() && key.isWritable())
+				onWritable();
+		} catch (IOException | RuntimeException e) {
+			closeNow();
+		}
+	}
+
+	void requestWrite() {
+		if (writeRequested.compareAndSet(false, true))
+			eventLoop.execute(this::enableWrite);
+	}
+
+	void close() {
+		eventLoop.execute(() -> {
+			closeRequested = true;
+			if (!hasPendingWrite())
+				closeNow();
+		});
+	}
+
+	private void enableWrite() {
+		if (key != null && key.isValid())
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+	}
+
+	private void onReadable() throws IOException {
+		if (channel.read(readBuffer) == -1) {
+			closeNow();
+			return;
+		}
+		parseFrames();
+	}
+
+	private void parseFrames() throws IOException {
+		readBuffer.flip();
+		while (parseFrame()) ;
+		readBuffer.compact();
+
+		if (requiredReadCapacity > readBuffer.capacity()) {
+			ByteBuffer grown = ByteBuffer.allocate(requiredReadCapacity);
+			readBuffer.flip();
+			grown.put(readBuffer);
+			session.getBufferPool().release(readBuffer);
+			readBuffer = grown;
+		}
+	}
+
+	private boolean parseFrame() throws IOException {
+		if (closed || readThrottled || requestsBlocked || verificationPending)
+			return false;
+		if (!handshakeReceived)
+			return parseHandshake();
+
+		int frameLength = MessageCodec.getFrameLength(readBuffer);
+		if (frameLength == -1)
+			return false;
+		if (readBuffer.remaining() < frameLength) {
+			requiredReadCapacity = frameLength;
+			return false;
+		}
+
+		if (MessageCodec.getMessageType(readBuffer) == Constants.MessageType.REQUEST && !client.hasSendCapacity()) {
+			blockRequests();
+			return false;
+		}
+		client.onBytesReceived(frameLength);
+		if (MessageCodec.decode(readBuffer, client) == Constants.MessageType.PIECE)
+			throttleRead(client.reserveDownload(frameLength - FRAME_HEADER_LEN - MessageCodec.PIECE_HEADER_PAYLOAD_LEN));
+		return true;
+	}
+
+	private void throttleRead(long delayNanos) {
+		if (delayNanos <= 0 || closed)
+			return;
+		readThrottled = true;
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		eventLoop.schedule(() -> {
+			readThrottled = false;
+			if (closed || !key.isValid())
+				return;
+			try {
+				resumeReading();
+			} catch (IOException | RuntimeException e) {
+				closeNow();
+			}
+		}, delayNanos);
+	}
+
+	/**
+	 * Leaves the REQUEST in the read buffer and stops reading until the send queue drains below its budget,
+	 * so the backlog is pushed back onto the neighbour's TCP window instead of our heap.
+	 */
+	private void blockRequests() {
+		requestsBlocked = true;
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+	}
+
+	private void unblockRequests() throws IOException {
+		if (!requestsBlocked || closed || !client.hasSendCapacity())
+			return;
+		requestsBlocked = false;
+		resumeReading();
+	}
+
+	/**
+	 * Stops reading until {@link #resumeReadingAfterVerification} because the piece just completed is waiting
+	 * for a verification worker. Called on the event loop while a frame is being handled.
+	 */
+	void pauseReadingForVerification() {
+		verificationPending = true;
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+	}
+
+	/**
+	 * May be called from any thread, including before {@link #pauseReadingForVerification}; it always runs
+	 * after the frame that paused has been handled.
+	 */
+	void resumeReadingAfterVerification() {
+		eventLoop.execute(() -> {
+			verificationPending = false;
+			if (closed || !key.isValid())
+				return;
+			try {
+				resumeReading();
+			} catch (IOException | RuntimeException e) {
+				closeNow();
+			}
+		});
+	}
+
+	private void resumeReading() throws IOException {
+		parseFrames();
+		if (!readThrottled && !requestsBlocked && !verificationPending && key.isValid())
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+	}
+
+	private void throttleWrite(long delayNanos) {
+		writeThrottled = true;
+		eventLoop.schedule(() -> {
+			writeThrottled = false;
+			enableWrite();
+		}, delayNanos);
+	}
+
+	private boolean parseHandshake() throws IOException {
+		if (readBuffer.remaining() < HANDSHAKE_LEN_LEN)
+			return false;
+		int handshakeLength = HANDSHAKE_LEN_LEN + (readBuffer.getShort(readBuffer.position()) & 0xFFFF);
+		if (readBuffer.remaining() < handshakeLength) {
+			requiredReadCapacity = handshakeLength;
+			return false;
+		}
+
+		byte[] handshake = new byte[handshakeLength];
+		readBuffer.get(handshake);
+		String receivedMsg = new DataInputStream(new ByteArrayInputStream(handshake)).readUTF();
+		handshakeReceived = true;
+
+		if (client == null) {
+			String neighborPeerId = HandshakeMessage.getPeerId(receivedMsg);
+			peer = session.getSwarm(HandshakeMessage.getInfoHash(receivedMsg));
+			if (peer == null) {
+				P2PLogger.getLogger().log(Level.WARNING, "Peer [" + session.getPeerInfo().getPeerId() + "] refuses Peer [" + neighborPeerId
+					+ "], it asked for the unknown swarm [" + HandshakeMessage.getInfoHash(receivedMsg) + "].");
+				closeNow();
+				return false;
+			}
+			InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+			PeerInfo neighbor = new PeerInfo(neighborPeerId, address.getAddress().getHostAddress(), address.getPort(), false);
+			client = new Client(peer, neighbor, this, true);
+			peer.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] is connected from Peer [" + neighborPeerId + "].");
+			appendToWriteBuffer(encodeHandshake());
+			enableWrite();
+			client.onConnectionEstablished();
+		} else {
+			client.onHandshake(receivedMsg);
+		}
+		return true;
+	}
+
+	private void onWritable() throws IOException {
+		do {
+			if (!flush()) {
+				unblockRequests();
+				return;
+			}
+			writeRequested.set(false);
+		} while (hasPendingWrite() && !writeThrottled);
+
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+		if (closeRequested && !hasPendingWrite())
+			closeNow();
+		else
+			unblockRequests();
+	}
+
+	private boolean flush() throws IOException {
+		do {
+			if (writeBuffer.hasRemaining()) {
+				onBytesSent(channel.write(writeBuffer));
+				if (writeBuffer.hasRemaining())
+					return false;
+			}
+			if (pendingRegion != null) {
+				long transferred = peer.getFileDownloader().transferBlock(pendingRegion.getPieceIndex(),
+					pendingRegion.getOffset() + pendingRegionOffset, pendingRegion.getLength() - pendingRegionOffset, channel);
+				pendingRegionOffset += transferred;
+				onBytesSent(transferred);
+				if (pendingRegionOffset < pendingRegion.getLength())
+					return false;
+				pendingRegion = null;
+			}
+		} while (fillWriteBuffer());
+		return true;
+	}
+
+	private boolean fillWriteBuffer() {
+		writeBuffer.clear();
+		while (pendingRegion == null && !writeThrottled && writeBuffer.position() < coalesceBytes) {
+			Message msg = pendingMsg != null ? pendingMsg : client != null ? client.pollMsg() : null;
+			pendingMsg = null;
+			if (msg == null)
+				break;
+
+			if (!uploadReserved && msg.getMessageType() == Constants.MessageType.PIECE) {
+				uploadReserved = true;
+				long delayNanos = client.reserveUpload(MessageCodec.getPiecePayloadLength(msg));
+				if (delayNanos > 0) {
+					pendingMsg = msg;
+					throttleWrite(delayNanos);
+					break;
+				}
+			}
+
+			int encodedLength = MessageCodec.getEncodedLength(msg);
+			if (encodedLength > writeBuffer.remaining()) {
+				if (writeBuffer.position() > 0) {
+					pendingMsg = msg;
+					break;
+				}
+				session.getBufferPool().release(writeBuffer);
+				writeBuffer = ByteBuffer.allocate(encodedLength);
+			}
+			MessageCodec.encode(msg, writeBuffer);
+			if (msg instanceof FileRegionMessage) {
+				pendingRegion = (FileRegionMessage) msg;
+				pendingRegionOffset = 0;
+			}
+			uploadReserved = false;
+		}
+		writeBuffer.flip();
+		return writeBuffer.hasRemaining();
+	}
+
+	private void onBytesSent(long bytes) {
+		if (client != null)
+			client.onBytesSent(bytes);
+	}
+
+	private boolean hasPendingWrite() {
+		return writeBuffer.hasRemaining() || pendingRegion != null || pendingMsg != null
+			|| (client != null && client.hasQueuedMsg());
+	}
+
+	private void appendToWriteBuffer(ByteBuffer data) {
+		writeBuffer.compact();
+		if (writeBuffer.remaining() < data.remaining()) {
+			ByteBuffer grown = ByteBuffer.allocate(writeBuffer.position() + data.remaining());
+			writeBuffer.flip();
+			grown.put(writeBuffer);
+			session.getBufferPool().release(writeBuffer);
+			writeBuffer = grown;
+		}
+		writeBuffer.put(data);
+		writeBuffer.flip();
+	}
+
+	private ByteBuffer encodeHandshake() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeUTF(new HandshakeMessage(session.getPeerInfo().getPeerId(), peer.getInfoHash()).toString());
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	void closeNow() {
+		if (closed)
+			return;
+		closed = true;
+		if (client != null)
+			client.onDisconnected();
+		if (key != null)
+			key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+		session.getBufferPool().release(readBuffer);
+		session.getBufferPool().release(writeBuffer);
+		session.onConnectionClosed();
+	}
+}
@@ -4,10 +4,18 @@ import org.networks.java.helper.Constants;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.*;
 
 public class P2PLogger {
 
+	private static final String LOGGER_NAME = "org.networks";
+	private static final Map<String, String> swarmTags = new ConcurrentHashMap<>();
+
 	private static Logger logger = null;
 
 	public P2PLogger() {}
@@ -21,15 +29,17 @@ public class P2PLogger {
 				private static final String format = "[%1$tF %1$tT] %2$s %n";
 
 				@Override
-				public synchronized String format(LogRecord logRecord) {
-					return String.format(format, new Date(logRecord.getMillis()), logRecord.getMessage()
+				public String format(LogRecord logRecord) {
+					String tag = swarmTags.get(logRecord.getLoggerName());
+					return String.format(format, new Date(logRecord.getMillis()),
+						tag == null ? logRecord.getMessage() : "[" + tag + "] " + logRecord.getMessage()
 					);
 				}
 			});
 
-			logger = Logger.getLogger("org.networks");
+			logger = Logger.getLogger(LOGGER_NAME);
 			logger.setUseParentHandlers(false);
-			logger.addHandler(fileHandler);
+			logger.addHandler(new AsyncHandler(fileHandler));
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -39,4 +49,102 @@ public class P2PLogger {
 	public static Logger getLogger() {
 		return logger;
 	}
+
+	/**
+	 * Returns the logger of one swarm. Its records go to the process log, prefixed with {@code tag} unless
+	 * that is null, so the swarms sharing a process can be told apart.
+	 */
+	public static Logger getSwarmLogger(String infoHash, String tag) {
+		String name = LOGGER_NAME + ".swarm." + infoHash;
+		if (tag != null)
+			swarmTags.put(name, tag);
+		return Logger.getLogger(name);
+	}
+
+	/**
+	 * Hands records to a single platform thread so that connection threads, virtual ones included, never
+	 * block inside the synchronized publish of the file handler. The queue is bounded: a burst beyond it makes
+	 * the logging threads wait rather than grow the heap. Flushing and closing wait for everything queued
+	 * before them to reach the file.
+	 */
+	private static class AsyncHandler extends Handler implements Runnable {
+
+		private static final Runnable STOP = () -> {};
+
+		private final Handler target;
+		private final BlockingQueue<Runnable> tasks;
+		private final Thread thread;
+		private volatile boolean closed;
+
+		AsyncHandler(Handler target) {
+			this.target = target;
+			tasks = new ArrayBlockingQueue<>(Constants.LOG_QUEUE_CAPACITY);
+			thread = new Thread(this, "p2p-logger");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		public void publish(LogRecord logRecord) {
+			if (closed)
+				return;
+			enqueue(() -> target.publish(logRecord));
+		}
+
+		@Override
+		public void run() {
+			try {
+				Runnable task;
+				while ((task = tasks.take()) != STOP) {
+					task.run();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void flush() {
+			if (closed || Thread.currentThread() == thread) {
+				target.flush();
+				return;
+			}
+			CountDownLatch flushed = new CountDownLatch(1);
+			if (!enqueue(() -> {
+				target.flush();
+				flushed.countDown();
+			}))
+				return;
+			try {
+				flushed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public synchronized void close() {
+			if (closed)
+				return;
+			closed = true;
+			if (enqueue(STOP)) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			target.close();
+		}
+
+		private boolean enqueue(Runnable task) {
+			try {
+				tasks.put(task);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
 }
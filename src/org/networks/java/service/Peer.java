@@ -1,20 +1,39 @@
 package org.networks.java.service;
 
+import org.networks.java.helper.AtomicBitfield;
+import org.networks.java.helper.BufferPool;
 import org.networks.java.helper.CommonConfig;
+import org.networks.java.helper.ConnectionExecutor;
 import org.networks.java.helper.Constants;
 import org.networks.java.helper.FileDownloader;
+import org.networks.java.helper.Metainfo;
+import org.networks.java.helper.PartialPiece;
+import org.networks.java.helper.PiecePicker;
+import org.networks.java.helper.RateMeter;
+import org.networks.java.helper.SwarmStats;
+import org.networks.java.helper.TokenBucket;
+import org.networks.java.model.BlockRequest;
 import org.networks.java.model.PeerInfo;
 import org.networks.java.tasks.GeneratePreferredNeighbors;
 import org.networks.java.tasks.OptimisticUnchokingTask;
 import org.networks.java.tasks.VerifyCompletionTask;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class Peer {
@@ -24,76 +43,203 @@ public class Peer {
     private int numberOfPiecesToBeDownloaded;
     private final ReadWriteLock lock;
 
-    private final ConcurrentHashMap<String, BitSet> neighbourPieceIndices = new ConcurrentHashMap<>();
-    private BitSet piecesIndex;
-
-    public ConcurrentHashMap<String, HashSet<Integer>> getPieceIndexStore() {
-        return pieceIndexStore;
-    }
-
-    private final ConcurrentHashMap<String, HashSet<Integer>> pieceIndexStore;
+    private final ConcurrentHashMap<String, AtomicBitfield> neighbourPieces = new ConcurrentHashMap<>();
+    private final Set<String> availableNeighbours = ConcurrentHashMap.newKeySet();
+    private AtomicBitfield localPieces;
+    private PiecePicker piecePicker;
 
     private final ConcurrentHashMap<String, Client> peerIdToNeighbourClientMapping;
-    private List<Client> neighboursPreferred;
-    private final List<String> peersInterestedInMe;
+    private final Set<String> peersInterestedInMe;
+    private final ConcurrentHashMap<Integer, PartialPiece> partialPieces;
+    // complete pieces handed to the verification workers, guarded by the lock
+    private final BitSet verifyingPieces = new BitSet();
+    private final AtomicBoolean endgame = new AtomicBoolean();
 
-    private Client previouslyUnchokedClient;
+    private final Unchoker<Client> unchoker;
 
     private final FileDownloader fileDownloader;
+    private final Metainfo metainfo;
 
     private final Timer taskTimer = new Timer(true);
 
-    private final CommonConfig commonConfig = new CommonConfig();
-
-    private final List<PeerInfo> neighbours;
+    private final Session session;
+    private final CommonConfig commonConfig;
+    private final String infoHash;
+    private final Logger logger;
+
+    private final RateMeter downloadMeter;
+    private final RateMeter uploadMeter;
+    private final LongAdder suppressedHaveMessages = new LongAdder();
+    private final LongAdder suppressedInterestMessages = new LongAdder();
+    private final LongAdder piecesDownloaded = new LongAdder();
+    private final LongAdder pieceBytesDownloaded = new LongAdder();
+    private final LongAdder duplicatePieces = new LongAdder();
+    private final LongAdder duplicateBlocks = new LongAdder();
+    private final LongAdder duplicateBytes = new LongAdder();
+    private final LongAdder hashFailures = new LongAdder();
+    private volatile long startMillis;
+    private volatile long completeMillis;
 
     public PeerInfo getPeerInfo() {
         return peerInfo;
     }
 
-    public Peer(PeerInfo peerInfo, List<PeerInfo> neighbours) throws IOException {
-        this.peerInfo = peerInfo;
+    public Peer(Session session, CommonConfig commonConfig) throws IOException {
+        this.session = session;
+        this.commonConfig = commonConfig;
+        this.peerInfo = session.getPeerInfo();
+        infoHash = Metainfo.infoHash(commonConfig.getFileName(), commonConfig.getFileSize(), commonConfig.getPieceSize());
+        // Lines are tagged with the file name only once the process hosts more than one swarm.
+        logger = P2PLogger.getSwarmLogger(infoHash,
+                session.getCommonConfig().getSwarmConfigs().isEmpty() ? null : commonConfig.getFileName());
+        downloadMeter = new RateMeter(commonConfig.getRateWindowSeconds(), null);
+        uploadMeter = new RateMeter(commonConfig.getRateWindowSeconds(), null);
         peerIdToNeighbourClientMapping = new ConcurrentHashMap<>();
-        neighboursPreferred = new ArrayList<>();
-        peersInterestedInMe = Collections.synchronizedList(new ArrayList<>());
-        pieceIndexStore = new ConcurrentHashMap<>();
-        pieceIndexStore.put(peerInfo.getPeerId(), new HashSet<>());
+        peersInterestedInMe = ConcurrentHashMap.newKeySet();
+        partialPieces = new ConcurrentHashMap<>();
+        unchoker = Unchoker.create(commonConfig, new Random());
 
         initializeTracker(peerInfo);
 
         fileDownloader = new FileDownloader(commonConfig.getFileName(), peerInfo.isFilePresent(), commonConfig, peerInfo.getPeerId());
         lock = new ReentrantReadWriteLock();
-        this.neighbours = neighbours;
-        P2PLogger.setLogger(peerInfo.getPeerId());
+        metainfo = loadMetainfo();
+        restoreResumedPieces();
     }
 
     private int initializeTracker(PeerInfo peerInfo) {
-        numberOfPiecesToBeDownloaded = (int) Math.ceil((double) commonConfig.getFileSize() / commonConfig.getPieceSize());
-        piecesIndex = new BitSet(numberOfPiecesToBeDownloaded);
+        numberOfPiecesToBeDownloaded = commonConfig.getNumberOfPieces();
+        localPieces = new AtomicBitfield(numberOfPiecesToBeDownloaded);
+        piecePicker = new PiecePicker(numberOfPiecesToBeDownloaded);
         if (peerInfo.isFilePresent()) {
-            piecesIndex.set(0, numberOfPiecesToBeDownloaded);
+            localPieces.setAll();
             for (int i = 0; i < numberOfPiecesToBeDownloaded; i++)
-                pieceIndexStore.get(peerInfo.getPeerId()).add(i);
+                piecePicker.remove(i);
         }
         return numberOfPiecesToBeDownloaded;
     }
 
+    private void restoreResumedPieces() throws IOException {
+        if (peerInfo.isFilePresent())
+            return;
+        BitSet resumedPieces = fileDownloader.getResumedPieces(commonConfig.getResumeSpotCheckPercent());
+        for (int i = resumedPieces.nextSetBit(0); i >= 0 && i < numberOfPiecesToBeDownloaded; i = resumedPieces.nextSetBit(i + 1)) {
+            localPieces.set(i);
+            piecePicker.remove(i);
+        }
+        if (!resumedPieces.isEmpty()) {
+            logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] resumed with [" + localPieces.cardinality()
+                    + "] pieces from a previous run.");
+        }
+    }
+
+    private Metainfo loadMetainfo() throws IOException {
+        Path path = Paths.get(System.getProperty(Constants.USER_DIR_PATH), commonConfig.getMetainfoFile());
+        if (!peerInfo.isFilePresent() && !commonConfig.isAllowUnverifiedPieces())
+            awaitMetainfo(path);
+        Metainfo loaded;
+        if (Files.exists(path)) {
+            try {
+                loaded = Metainfo.read(path);
+            } catch (IOException e) {
+                return withoutMetainfo("Unreadable metainfo at [" + path + "] (" + e.getMessage() + ")");
+            }
+        } else if (peerInfo.isFilePresent()) {
+            loaded = Metainfo.build(Paths.get(fileDownloader.getFilePath()), commonConfig.getFileName(),
+                    commonConfig.getPieceSize(), commonConfig.getHashAlgorithm());
+            loaded.write(path);
+            logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] hashed [" + loaded.getNumberOfPieces()
+                    + "] pieces into [" + path + "].");
+        } else {
+            return withoutMetainfo("No metainfo at [" + path + "]");
+        }
+
+        if (!loaded.matches(commonConfig))
+            return withoutMetainfo("Metainfo at [" + path + "] does not match " + Constants.COMMON_CFG_FILE_NAME);
+        return loaded;
+    }
+
+    /**
+     * Gives a seed started at the same time a chance to hash the file; it only publishes the metainfo once
+     * it is complete.
+     */
+    private void awaitMetainfo(Path path) throws IOException {
+        if (Files.exists(path) || commonConfig.getMetainfoWaitSeconds() <= 0)
+            return;
+        logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] is waiting up to ["
+                + commonConfig.getMetainfoWaitSeconds() + "] seconds for [" + path + "].");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(commonConfig.getMetainfoWaitSeconds());
+        try {
+            while (!Files.exists(path) && System.nanoTime() - deadline < 0)
+                TimeUnit.MILLISECONDS.sleep(Constants.METAINFO_POLL_INTERVAL_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + path);
+        }
+    }
+
+    /**
+     * A seed never stores received pieces, so it can run without hashes. A leecher refuses to start unless
+     * AllowUnverifiedPieces says to trust its neighbours.
+     */
+    private Metainfo withoutMetainfo(String reason) throws IOException {
+        if (!peerInfo.isFilePresent() && !commonConfig.isAllowUnverifiedPieces())
+            throw new IOException(reason + ", set AllowUnverifiedPieces to download without verifying pieces.");
+        logger.log(Level.WARNING, reason + ", received pieces will not be verified.");
+        return null;
+    }
+
+    public int getDownloadedPieceCount() {
+        return localPieces.cardinality();
+    }
+
     public boolean hasOnePiece() {
-        return pieceIndexStore.get(peerInfo.getPeerId()).size() > 0;
+        return !localPieces.isEmpty();
+    }
+
+    public boolean hasCompleteFile() {
+        return localPieces.isComplete();
     }
 
     public void addClient(Client client) {
         String peerId = client.getNeighborPeerInfo().getPeerId();
-        neighbourPieceIndices.put(peerId, new BitSet(piecesIndex.size()));
-        pieceIndexStore.computeIfAbsent(peerId, k -> new HashSet<>());
+        replaceNeighbourPieces(peerId, new AtomicBitfield(numberOfPiecesToBeDownloaded));
         peerIdToNeighbourClientMapping.put(peerId, client);
     }
 
+    /**
+     * Drops a disconnected neighbour's pieces from the availability counts. Its bitfield is kept so that
+     * completion checks still know what it had.
+     */
+    public void removeNeighbourAvailability(String peerID) {
+        lock.writeLock().lock();
+        try {
+            AtomicBitfield pieces = neighbourPieces.get(peerID);
+            if (pieces != null && availableNeighbours.remove(peerID))
+                piecePicker.decrement(pieces);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void replaceNeighbourPieces(String peerID, AtomicBitfield pieces) {
+        lock.writeLock().lock();
+        try {
+            AtomicBitfield previousPieces = neighbourPieces.put(peerID, pieces);
+            if (previousPieces != null && availableNeighbours.contains(peerID))
+                piecePicker.decrement(previousPieces);
+            piecePicker.increment(pieces);
+            availableNeighbours.add(peerID);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     public void start() {
-        new Thread(new Server(this)).start();
-        neighbours.forEach(peerInfo -> {
-            new Thread(new Client(this, peerInfo)).start();
-        });
+        startMillis = System.currentTimeMillis();
+        if (hasCompleteFile())
+            completeMillis = startMillis;
+        session.getNeighbours().forEach(neighbour -> session.connect(this, neighbour));
         scheduleTasks();
     }
 
@@ -107,207 +253,326 @@ public class Peer {
         List<Client> completedPeers = getCompletedPeers();
         List<Client> candidatePeers = new ArrayList<>(peerIdToNeighbourClientMapping.values());
         candidatePeers.removeAll(completedPeers);
-        if (previouslyUnchokedClient != null) {
-            candidatePeers.remove(previouslyUnchokedClient);
-        }
+        candidatePeers.removeIf(client -> !peersInterestedInMe.contains(client.getNeighborPeerInfo().getPeerId()));
         return candidatePeers;
     }
 
     public List<Client> getCompletedPeers() {
-        lock.readLock().lock();
         List<Client> completedPeers = new ArrayList<>();
-        Iterator<Entry<String, HashSet<Integer>>> pieceIterator = pieceIndexStore.entrySet().iterator();
-        while (pieceIterator.hasNext()) {
-            Map.Entry<String, HashSet<Integer>> peer = pieceIterator.next();
-            if (peer.getKey().equals(peerInfo.getPeerId()))
-                continue;
-
-            if (peer.getValue().size() == numberOfPiecesToBeDownloaded)
-                completedPeers.add(peerIdToNeighbourClientMapping.get(peer.getKey()));
-        }
-        lock.readLock().unlock();
+        neighbourPieces.forEach((peerID, pieces) -> {
+            Client client = peerIdToNeighbourClientMapping.get(peerID);
+            if (client != null && pieces.isComplete())
+                completedPeers.add(client);
+        });
         return completedPeers;
     }
 
-    public void updateNeighborPieceIndex(String peerID, Integer pieceIndex) {
+    public void updateNeighborPieceIndex(String peerID, int pieceIndex) {
+        if (pieceIndex < 0 || pieceIndex >= numberOfPiecesToBeDownloaded)
+            return;
+        AtomicBitfield pieces = neighbourPieces.get(peerID);
+        if (pieces == null || pieces.get(pieceIndex))
+            return;
         lock.writeLock().lock();
         try {
-            BitSet nBitSet = neighbourPieceIndices.get(peerID);
-            nBitSet.set(pieceIndex);
-            neighbourPieceIndices.put(peerID, nBitSet);
-            pieceIndexStore.get(peerID).add(pieceIndex);
+            if (pieces.set(pieceIndex) && availableNeighbours.contains(peerID))
+                piecePicker.increment(pieceIndex);
         } finally {
             lock.writeLock().unlock();
         }
     }
 
     public void setNeighborBitField(String peerID, byte[] bitField) {
+        replaceNeighbourPieces(peerID, AtomicBitfield.valueOf(bitField, numberOfPiecesToBeDownloaded));
+    }
+
+    public boolean hasPiece(int pieceIndex) {
+        return pieceIndex >= 0 && pieceIndex < numberOfPiecesToBeDownloaded && localPieces.get(pieceIndex);
+    }
+
+    public byte[] getBitField() {
+        return localPieces.toByteArray();
+    }
+
+    public boolean neighbourHasPiece(String peerID, int pieceIndex) {
+        AtomicBitfield pieces = neighbourPieces.get(peerID);
+        return pieces != null && pieces.get(pieceIndex);
+    }
+
+    public boolean isInterestedIn(String peerID) {
+        AtomicBitfield pieces = neighbourPieces.get(peerID);
+        return pieces != null && pieces.intersectsAndNot(localPieces);
+    }
+
+    public BlockRequest claimBlockRequest(String peerID) {
+        lock.writeLock().lock();
         try {
-            lock.writeLock().lock();
-            BitSet bitSet = BitSet.valueOf(bitField);
-            neighbourPieceIndices.put(peerID, bitSet);
-            for (int i = 0; i < numberOfPiecesToBeDownloaded; i++) {
-                if (bitSet.get(i)) {
-                    pieceIndexStore.get(peerID).add(i);
+            AtomicBitfield pieces = neighbourPieces.get(peerID);
+            for (PartialPiece partialPiece : partialPieces.values()) {
+                if (pieces.get(partialPiece.getPieceIndex())) {
+                    BlockRequest blockRequest = partialPiece.claimBlock();
+                    if (blockRequest != null)
+                        return blockRequest;
                 }
             }
+
+            int pieceIndex = piecePicker.pickRarest(pieces, i -> partialPieces.containsKey(i) || verifyingPieces.get(i));
+            if (pieceIndex == -1)
+                return null;
+
+            PartialPiece partialPiece = new PartialPiece(pieceIndex, fileDownloader.getPieceLength(pieceIndex), commonConfig.getBlockSize());
+            partialPieces.put(pieceIndex, partialPiece);
+            return partialPiece.claimBlock();
         } finally {
             lock.writeLock().unlock();
         }
     }
 
-    public boolean hasPiece(Integer pieceIndex) {
+    public BlockRequest claimEndgameBlockRequest(String peerID, Predicate<BlockRequest> alreadyRequested) {
+        BlockRequest duplicateRequest = null;
+        boolean enteredEndgame = false;
+        lock.writeLock().lock();
         try {
-            lock.readLock().lock();
-            return pieceIndexStore.get(peerInfo.getPeerId()).contains(pieceIndex);
+            if (!endgame.get()) {
+                if (!isEndgameReached())
+                    return null;
+                enteredEndgame = endgame.compareAndSet(false, true);
+            }
+
+            AtomicBitfield pieces = neighbourPieces.get(peerID);
+            for (PartialPiece partialPiece : partialPieces.values()) {
+                if (duplicateRequest != null || !pieces.get(partialPiece.getPieceIndex()))
+                    continue;
+                for (BlockRequest blockRequest : partialPiece.getOutstandingBlocks()) {
+                    if (!alreadyRequested.test(blockRequest)) {
+                        partialPiece.claimDuplicateBlock(blockRequest.getOffset());
+                        duplicateRequest = blockRequest;
+                        break;
+                    }
+                }
+            }
         } finally {
-            lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
+
+        if (enteredEndgame) {
+            logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] entered endgame mode with ["
+                    + partialPieces.size() + "] pieces in flight.");
+            peerIdToNeighbourClientMapping.values().stream()
+                    .filter(client -> !client.getNeighborPeerInfo().getPeerId().equals(peerID))
+                    .forEach(Client::onEndgame);
         }
+        return duplicateRequest;
     }
 
-    public byte[] getBitField() {
-        lock.readLock().lock();
-        byte[] bytes;
+    /**
+     * Whether every missing piece has been requested and few enough blocks are still in flight that asking
+     * other neighbours for them costs little. With deep pipelines the first condition alone holds almost
+     * from the start. Called under the lock.
+     */
+    private boolean isEndgameReached() {
+        if (piecePicker.getMissingCount() > partialPieces.size() + verifyingPieces.cardinality())
+            return false;
+        int outstandingBlocks = 0;
+        for (PartialPiece partialPiece : partialPieces.values()) {
+            if (!partialPiece.isFullyRequested())
+                return false;
+            outstandingBlocks += partialPiece.getOutstandingBlockCount();
+        }
+        return outstandingBlocks <= commonConfig.getEndgameBlocks();
+    }
+
+    public void releaseBlockRequest(BlockRequest blockRequest) {
+        lock.writeLock().lock();
+        try {
+            PartialPiece partialPiece = partialPieces.get(blockRequest.getPieceIndex());
+            if (partialPiece == null)
+                return;
+            partialPiece.releaseBlock(blockRequest.getOffset());
+            // Nothing of it is held or expected any more, so let rarest-first decide on it again.
+            if (partialPiece.isUntouched())
+                partialPieces.remove(blockRequest.getPieceIndex(), partialPiece);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores a received block. When it completes its piece, the piece is handed to the verification workers,
+     * which check it, commit it to storage and only then publish it. Never blocks: if the workers are saturated
+     * the piece is parked and false is returned, and the connection should stop reading until
+     * {@code onVerificationStarted} runs.
+     */
+    public boolean addBlock(String peerID, int pieceIndex, int offset, ByteBuffer block, Runnable onVerificationStarted) {
+        int blockLength = block.remaining();
+        PartialPiece partialPiece;
+        boolean completed;
+        lock.writeLock().lock();
+        try {
+            if (pieceIndex < 0 || pieceIndex >= numberOfPiecesToBeDownloaded)
+                return true;
+            if (localPieces.get(pieceIndex) || verifyingPieces.get(pieceIndex)) {
+                onDuplicateBlock(blockLength);
+                return true;
+            }
+
+            partialPiece = partialPieces.computeIfAbsent(pieceIndex,
+                    k -> new PartialPiece(k, fileDownloader.getPieceLength(k), commonConfig.getBlockSize()));
+            if (!partialPiece.receiveBlock(offset, block)) {
+                onDuplicateBlock(blockLength);
+                return true;
+            }
+            // Only the block that completes the piece hands it on, later copies are duplicates from here.
+            completed = partialPiece.isComplete();
+            if (completed) {
+                partialPieces.remove(pieceIndex);
+                verifyingPieces.set(pieceIndex);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (endgame.get()) {
+            BlockRequest receivedBlock = new BlockRequest(pieceIndex, offset, blockLength);
+            peerIdToNeighbourClientMapping.values().forEach(client -> client.cancelBlockRequest(receivedBlock));
+        }
+        return !completed || session.getVerificationExecutor().execute(() -> completePiece(peerID, partialPiece),
+                onVerificationStarted);
+    }
+
+    private void onDuplicateBlock(int blockLength) {
+        duplicateBlocks.increment();
+        duplicateBytes.add(blockLength);
+    }
+
+    private void completePiece(String peerID, PartialPiece partialPiece) {
+        int pieceIndex = partialPiece.getPieceIndex();
+        byte[] data = partialPiece.getData();
+        boolean verified = false;
         try {
-            bytes = piecesIndex.toByteArray();
+            verified = metainfo == null || metainfo.verify(pieceIndex, data);
+            if (verified)
+                storePiece(peerID, pieceIndex, data);
         } finally {
-            lock.readLock().unlock();
+            finishVerifying(pieceIndex);
+        }
+
+        // Only now can the piece be claimed again.
+        if (!verified) {
+            logger.log(Level.WARNING, "Peer [" + peerInfo.getPeerId() + "] discarded piece [" + pieceIndex
+                    + "] from [" + peerID + "] because it failed hash verification, it will be requested again.");
+            hashFailures.increment();
+            peerIdToNeighbourClientMapping.values().forEach(Client::onPieceReleased);
         }
-        return bytes;
     }
 
-    public int getPieceRequestIndex(String peerID) {
+    private void storePiece(String peerID, int pieceIndex, byte[] data) {
         try {
-            lock.readLock().lock();
-            ArrayList<Integer> candidatePieces = new ArrayList<>(pieceIndexStore.get(peerID));
-            candidatePieces.removeAll(new ArrayList<>(pieceIndexStore.get(peerInfo.getPeerId())));
-            if (!candidatePieces.isEmpty()) {
-                return candidatePieces.get(new Random().nextInt(candidatePieces.size()));
+            if (addPiece(pieceIndex, data)) {
+                piecesDownloaded.increment();
+                pieceBytesDownloaded.add(data.length);
+                logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] has downloaded the piece [" + pieceIndex + "] from [" + peerID + "]. "
+                        + "Now the number of pieces it has is [" + getDownloadedPieceCount() + "].");
+            } else {
+                duplicatePieces.increment();
             }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Peer [" + peerInfo.getPeerId() + "] could not store piece [" + pieceIndex + "].", e);
+        }
+    }
+
+    private void finishVerifying(int pieceIndex) {
+        lock.writeLock().lock();
+        try {
+            verifyingPieces.clear(pieceIndex);
         } finally {
-            lock.readLock().unlock();
+            lock.writeLock().unlock();
         }
-        return -1;
     }
 
-    public boolean addPiece(Integer pieceIndex, byte[] data) {
+    public boolean addPiece(Integer pieceIndex, byte[] data) throws IOException {
+        if (hasPiece(pieceIndex))
+            return false;
+
+        fileDownloader.addFilePiece(data, pieceIndex);
+
+        boolean complete;
         lock.writeLock().lock();
         try {
-            if (pieceIndexStore.get(peerInfo.getPeerId()).contains(pieceIndex))
+            if (!localPieces.set(pieceIndex))
                 return false;
 
-            if (!piecesIndex.get(pieceIndex)) {
-                fileDownloader.addFilePiece(data, pieceIndex);
-                piecesIndex.set(pieceIndex);
-                pieceIndexStore.get(peerInfo.getPeerId()).add(pieceIndex);
-                if (piecesIndex.nextClearBit(0) >= numberOfPiecesToBeDownloaded) {
-                    P2PLogger.getLogger().log(Level.INFO, "Peer " + peerInfo.getPeerId() + " has downloaded the complete file.");
-                }
+            piecePicker.remove(pieceIndex);
+            complete = localPieces.isComplete();
+            if (complete) {
+                completeMillis = System.currentTimeMillis();
+                logger.log(Level.INFO, "Peer " + peerInfo.getPeerId() + " has downloaded the complete file.");
             }
         } finally {
             lock.writeLock().unlock();
         }
 
-        peerIdToNeighbourClientMapping.values().forEach(client -> client.sendHaveMsg(pieceIndex));
+        peerIdToNeighbourClientMapping.values().forEach(client -> client.onPieceAdded(pieceIndex));
+        if (complete)
+            peerIdToNeighbourClientMapping.values().forEach(Client::onDownloadComplete);
 
         return true;
     }
 
     public byte[] getPiece(Integer pieceIndex) {
-        byte[] piece = null;
-        lock.readLock().lock();
-        try {
-            if (piecesIndex.get(pieceIndex)) {
-                piece = fileDownloader.getFilePiece(pieceIndex);
-            }
-        } finally {
-            lock.readLock().unlock();
-        }
-        return piece;
+        if (!hasPiece(pieceIndex))
+            return null;
+        return fileDownloader.getFilePiece(pieceIndex);
     }
 
     public void shutdown() throws IOException, InterruptedException {
         peerIdToNeighbourClientMapping.values().forEach(Client::shutdown);
         taskTimer.cancel();
         fileDownloader.closeFile();
-        P2PLogger.getLogger().log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] has downloaded the complete file.");
-        Thread.sleep(Constants.PROCESS_STALL_INTERVAL);
-        System.exit(Constants.PROCESS_EXIT_CODE);
+        if (commonConfig.isWriteStats())
+            getStats().write(Paths.get(fileDownloader.getFilePath() + Constants.STATS_FILE_EXTENSION));
+        logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] has downloaded the complete file.");
+        logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] suppressed [" + suppressedHaveMessages.sum()
+                + "] redundant `have` and [" + suppressedInterestMessages.sum() + "] unchanged `interested`/`not interested` messages.");
+        session.onSwarmFinished(this);
+    }
+
+    public SwarmStats getStats() {
+        return new SwarmStats(peerInfo.getPeerId(), startMillis, completeMillis, piecesDownloaded.sum(),
+                pieceBytesDownloaded.sum(), downloadMeter.getTotalBytes(), uploadMeter.getTotalBytes(), duplicatePieces.sum(),
+                duplicateBlocks.sum(), duplicateBytes.sum(), hashFailures.sum());
     }
 
     public void addPeersInterestedInMe(String peerID) {
-        synchronized (peersInterestedInMe) {
-            peersInterestedInMe.add(peerID);
-        }
+        peersInterestedInMe.add(peerID);
     }
 
     public void removeFromPeersInterestedInMe(String peerID) {
-        synchronized (peersInterestedInMe) {
-            peersInterestedInMe.remove(peerID);
-        }
+        peersInterestedInMe.remove(peerID);
     }
 
     public void setPreferredNeighbours() {
-        List<Client> peersToSendData = getPeersToSendData();
-
-        if (peersToSendData.isEmpty())
-            return;
-
-        peersToSendData.sort((c1, c2) -> {
-            if (c1.getDownloadRate() < c2.getDownloadRate()) {
-                return 1;
-            } else if (c1.getDownloadRate() == c2.getDownloadRate()) {
-                return 0;
-            }
-            return -1;
-        });
-
-        List<Client> newPreferredClients =
-                new ArrayList<>(peersToSendData.subList(0,
-                        Math.min(peersToSendData.size(), commonConfig.getNumberOfPreferredNeighbors())));
-
-        newPreferredClients.forEach(client -> {
-            if (newPreferredClients.contains(client) && client != previouslyUnchokedClient) {
-                client.unchokeNeighbor();
-            }
-        });
-
-        neighboursPreferred.forEach(client -> {
-            if (!newPreferredClients.contains(client)) {
-                client.chokeNeighbor();
-            }
-        });
-
-        neighboursPreferred = newPreferredClients;
-        displayPreferredClients();
+        if (unchoker.updatePreferred(getPeersToSendData(), hasCompleteFile(), commonConfig.getNumberOfPreferredNeighbors()))
+            displayPreferredClients();
     }
 
     private void displayPreferredClients() {
-        List<String> ids = neighboursPreferred.stream()
+        List<String> ids = unchoker.getPreferred().stream()
                 .map(client -> client.getNeighborPeerInfo().getPeerId()).collect(Collectors.toList());
 
-        P2PLogger.getLogger().log(Level.INFO, String.format("Peer [%s] has the preferred neighbors [%s]",
+        logger.log(Level.INFO, String.format("Peer [%s] has the preferred neighbors [%s]",
                 peerInfo.getPeerId(), String.join(", ", ids)));
     }
 
 
     public void unchokeNewNeighbour() {
-        List<Client> eligiblePeers = getPeersToSendData();
-        eligiblePeers.removeAll(neighboursPreferred);
-
-        if (eligiblePeers.isEmpty()) {
+        Client optimisticClient = unchoker.updateOptimistic(getPeersToSendData());
+        if (optimisticClient == null) {
             return;
         }
 
-        if (previouslyUnchokedClient != null) {
-            previouslyUnchokedClient.chokeNeighbor();
-        }
-
-        previouslyUnchokedClient = eligiblePeers.get(new Random().nextInt(eligiblePeers.size()));
-        previouslyUnchokedClient.unchokeNeighbor();
-
-        P2PLogger.getLogger().log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] has the optimistically unchoked neighbor ["
-                + previouslyUnchokedClient.getPeer().getPeerInfo().getPeerId() + "].");
+        logger.log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] has the optimistically unchoked neighbor ["
+                + optimisticClient.getNeighborPeerInfo().getPeerId() + "].");
     }
 
     public ConcurrentHashMap<String, Client> getPeerIdToNeighbourClientMapping() {
@@ -318,6 +583,58 @@ public class Peer {
         return numberOfPiecesToBeDownloaded;
     }
 
+    public ConnectionExecutor getConnectionExecutor() {
+        return session.getConnectionExecutor();
+    }
+
+    public CommonConfig getCommonConfig() {
+        return commonConfig;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public String getInfoHash() {
+        return infoHash;
+    }
+
+    void setPeerRateLimits(long maxPeerUploadRate, long maxPeerDownloadRate) {
+        peerIdToNeighbourClientMapping.values().forEach(client -> client.setRateLimits(maxPeerUploadRate, maxPeerDownloadRate));
+    }
+
+    public TokenBucket getUploadLimit() {
+        return session.getUploadLimit();
+    }
+
+    public TokenBucket getDownloadLimit() {
+        return session.getDownloadLimit();
+    }
+
+    public LongAdder getSuppressedHaveMessages() {
+        return suppressedHaveMessages;
+    }
+
+    public LongAdder getSuppressedInterestMessages() {
+        return suppressedInterestMessages;
+    }
+
+    public BufferPool getBufferPool() {
+        return session.getBufferPool();
+    }
+
+    public RateMeter getDownloadMeter() {
+        return downloadMeter;
+    }
+
+    public RateMeter getUploadMeter() {
+        return uploadMeter;
+    }
+
     public FileDownloader getFileDownloader() {
         return fileDownloader;
     }
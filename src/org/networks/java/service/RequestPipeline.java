@@ -0,0 +1,122 @@
+package org.networks.java.service;
+
+import org.networks.java.model.BlockRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bookkeeping for the REQUESTs one connection has in flight. When adaptive, the depth follows the measured
+ * bandwidth-delay product: the minimum request-to-piece latency times the smoothed arrival rate.
+ */
+class RequestPipeline {
+
+	private static final double RATE_SMOOTHING = 0.2;
+
+	private final int minDepth;
+	private final int maxDepth;
+	private final boolean adaptive;
+	private final int blockSize;
+
+	private final ReentrantLock lock;
+	private final Map<BlockRequest, Long> outstandingRequests;
+
+	private int depth;
+	private long minLatencyNanos;
+	private long lastArrivalNanos;
+	private double bytesPerNano;
+
+	RequestPipeline(int minDepth, int maxDepth, boolean adaptive, int blockSize) {
+		this.minDepth = Math.max(1, minDepth);
+		this.maxDepth = Math.max(this.minDepth, maxDepth);
+		this.adaptive = adaptive;
+		this.blockSize = blockSize;
+		lock = new ReentrantLock();
+		outstandingRequests = new LinkedHashMap<>();
+		depth = this.minDepth;
+		minLatencyNanos = Long.MAX_VALUE;
+	}
+
+	boolean hasCapacity() {
+		lock.lock();
+		try {
+			return outstandingRequests.size() < depth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean contains(BlockRequest blockRequest) {
+		lock.lock();
+		try {
+			return outstandingRequests.containsKey(blockRequest);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records the request as sent unless the pipeline is already full or already holds it. Other connections'
+	 * threads fill the pipeline too, so the check and the insert cannot be separate calls.
+	 */
+	boolean tryReserve(BlockRequest blockRequest) {
+		lock.lock();
+		try {
+			if (outstandingRequests.size() >= depth || outstandingRequests.containsKey(blockRequest))
+				return false;
+			outstandingRequests.put(blockRequest, System.nanoTime());
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean onBlockReceived(BlockRequest blockRequest) {
+		lock.lock();
+		try {
+			Long sentAt = outstandingRequests.remove(blockRequest);
+			if (sentAt == null)
+				return false;
+
+			long now = System.nanoTime();
+			minLatencyNanos = Math.min(minLatencyNanos, now - sentAt);
+			if (lastArrivalNanos != 0 && now > lastArrivalNanos) {
+				double sample = (double) blockRequest.getLength() / (now - lastArrivalNanos);
+				bytesPerNano = bytesPerNano == 0 ? sample : bytesPerNano + RATE_SMOOTHING * (sample - bytesPerNano);
+			}
+			lastArrivalNanos = now;
+
+			if (adaptive && bytesPerNano > 0) {
+				int bdpBlocks = (int) Math.ceil(minLatencyNanos * bytesPerNano / blockSize);
+				depth = Math.max(minDepth, Math.min(maxDepth, bdpBlocks + 1));
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean cancel(BlockRequest blockRequest) {
+		lock.lock();
+		try {
+			return outstandingRequests.remove(blockRequest) != null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	List<BlockRequest> clear() {
+		lock.lock();
+		try {
+			List<BlockRequest> blockRequests = new ArrayList<>(outstandingRequests.keySet());
+			outstandingRequests.clear();
+			lastArrivalNanos = 0;
+			return blockRequests;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.networks.java.service;
+
+import org.networks.java.helper.Constants;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Choker used once we hold the complete file, when there is no download rate to reciprocate. Slots go
+ * either to the neighbours draining our uploads the fastest or to each interested neighbour in turn.
+ */
+class SeedChoker implements Choker {
+
+	private final Constants.SeedChokingStrategy strategy;
+	private int roundRobinCursor;
+
+	SeedChoker(Constants.SeedChokingStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	@Override
+	public <T extends Neighbour> List<T> selectPreferred(List<T> candidates, int slots) {
+		if (strategy == Constants.SeedChokingStrategy.ROUND_ROBIN)
+			return selectRoundRobin(candidates, slots);
+
+		Map<T, Double> uploadRates = new HashMap<>();
+		candidates.forEach(neighbour -> uploadRates.put(neighbour, neighbour.getUploadRate()));
+		List<T> ranked = new ArrayList<>(candidates);
+		ranked.sort((n1, n2) -> Double.compare(uploadRates.get(n2), uploadRates.get(n1)));
+		return new ArrayList<>(ranked.subList(0, Math.min(ranked.size(), slots)));
+	}
+
+	private <T extends Neighbour> List<T> selectRoundRobin(List<T> candidates, int slots) {
+		List<T> ordered = new ArrayList<>(candidates);
+		ordered.sort(Comparator.comparing(Neighbour::getNeighborPeerId));
+		List<T> selected = new ArrayList<>();
+		for (int i = 0; i < Math.min(ordered.size(), slots); i++)
+			selected.add(ordered.get((roundRobinCursor + i) % ordered.size()));
+		if (!ordered.isEmpty())
+			roundRobinCursor = (roundRobinCursor + selected.size()) % ordered.size();
+		return selected;
+	}
+}
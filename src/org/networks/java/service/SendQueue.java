@@ -0,0 +1,181 @@
+package org.networks.java.service;
+
+import org.networks.java.helper.MessageCodec;
+import org.networks.java.model.Message;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import static org.networks.java.helper.Constants.MessageType.PIECE;
+
+/**
+ * Outbound queue of one connection. Control messages always go out ahead of PIECE data, and queued PIECE
+ * payloads are held to a byte budget so a slow neighbour cannot pile up unbounded block data.
+ */
+class SendQueue {
+
+	private final long byteBudget;
+
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	private final Condition notFull;
+	private final ArrayDeque<Message> controlMessages;
+	private final ArrayDeque<Message> dataMessages;
+
+	private long dataBytes;
+	private boolean closed;
+
+	SendQueue(long byteBudget) {
+		this.byteBudget = Math.max(1, byteBudget);
+		lock = new ReentrantLock();
+		notEmpty = lock.newCondition();
+		notFull = lock.newCondition();
+		controlMessages = new ArrayDeque<>();
+		dataMessages = new ArrayDeque<>();
+	}
+
+	/**
+	 * Queues a message without waiting. Data is admitted even past the budget, so callers that must not
+	 * block check {@link #hasCapacity()} before taking on more work.
+	 */
+	void add(Message msg) {
+		lock.lock();
+		try {
+			if (closed)
+				return;
+			enqueue(msg);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a message, waiting while the data budget is exhausted. A single message larger than the budget
+	 * is still admitted once the queue has drained. Returns false if the queue was closed meanwhile.
+	 */
+	boolean put(Message msg) throws InterruptedException {
+		lock.lock();
+		try {
+			if (isData(msg)) {
+				long bytes = getDataBytes(msg);
+				while (!closed && dataBytes > 0 && dataBytes + bytes > byteBudget)
+					notFull.await();
+			}
+			if (closed)
+				return false;
+			enqueue(msg);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	Message take() throws InterruptedException {
+		lock.lock();
+		try {
+			Message msg;
+			while ((msg = dequeue()) == null)
+				notEmpty.await();
+			return msg;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	Message poll() {
+		lock.lock();
+		try {
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean isEmpty() {
+		lock.lock();
+		try {
+			return controlMessages.isEmpty() && dataMessages.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean hasCapacity() {
+		lock.lock();
+		try {
+			return dataBytes < byteBudget;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops queued data messages matching the filter, e.g. blocks the neighbour has cancelled.
+	 */
+	void removeData(Predicate<Message> filter) {
+		lock.lock();
+		try {
+			dataMessages.removeIf(msg -> {
+				if (msg.getMessageType() != PIECE || !filter.test(msg))
+					return false;
+				dataBytes -= getDataBytes(msg);
+				return true;
+			});
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting messages, drops the ones nobody will send any more and wakes any producer waiting
+	 * for budget.
+	 */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			controlMessages.clear();
+			dataMessages.clear();
+			dataBytes = 0;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void enqueue(Message msg) {
+		if (isData(msg)) {
+			dataMessages.add(msg);
+			dataBytes += getDataBytes(msg);
+		} else {
+			controlMessages.add(msg);
+		}
+		notEmpty.signal();
+	}
+
+	private Message dequeue() {
+		Message msg = controlMessages.poll();
+		if (msg != null)
+			return msg;
+		msg = dataMessages.poll();
+		if (msg != null) {
+			dataBytes -= getDataBytes(msg);
+			notFull.signalAll();
+		}
+		return msg;
+	}
+
+	/**
+	 * The end-of-stream marker has no type and rides with the data so it stays behind everything queued.
+	 */
+	private static boolean isData(Message msg) {
+		return msg.getMessageType() == null || msg.getMessageType() == PIECE;
+	}
+
+	private static long getDataBytes(Message msg) {
+		return msg.getMessageType() == PIECE ? MessageCodec.getPiecePayloadLength(msg) : 0;
+	}
+}
@@ -1,50 +1,76 @@
 package org.networks.java.service;
 
 import org.networks.java.helper.MessageStream;
+import org.networks.java.model.HandshakeMessage;
 import org.networks.java.model.PeerInfo;
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Level;
 
+/**
+ * Accepts neighbours on the session's port and hands each connection to the swarm its handshake names.
+ */
 public class Server implements Runnable {
 
-    Peer peer;
+    private final Session session;
 
-    public Server() {
-    }
-
-    public Server(Peer peer) {
-        this.peer = peer;
+    public Server(Session session) {
+        this.session = session;
     }
 
     @Override
     public void run() {
-        try (ServerSocket serverSocket = new ServerSocket(peer.getPeerInfo().getPortNumber())) {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(session.getPeerInfo().getPortNumber()));
             while (true) {
-                Socket socket = serverSocket.accept();
-                MessageStream msgStream = new MessageStream(socket);
-                String neighborPeerId = getNeighborPeerId(msgStream);
-                Client client = createNewClient(socket, msgStream, neighborPeerId);
-                P2PLogger.getLogger().log(Level.INFO, "Peer [" + peer.getPeerInfo().getPeerId() + "] is connected from Peer [" + neighborPeerId + "].");
-
-                new Thread(client).start();
+                SocketChannel channel = serverChannel.accept();
+                if (!session.tryOpenConnection()) {
+                    P2PLogger.getLogger().log(Level.WARNING, "Peer [" + session.getPeerInfo().getPeerId()
+                            + "] is at its connection limit and refuses [" + channel.getRemoteAddress() + "].");
+                    channel.close();
+                    continue;
+                }
+                try {
+                    accept(channel);
+                } catch (IOException e) {
+                    session.onConnectionClosed();
+                    channel.close();
+                }
             }
         } catch (IOException e) {
         }
 
     }
 
-    private Client createNewClient(Socket socket, MessageStream msgStream, String neighborPeerId) {
-        PeerInfo neighbor = new PeerInfo(neighborPeerId, socket.getInetAddress().getHostAddress(), socket.getPort(), false);
-        Client client = new Client(peer, neighbor, socket, msgStream);
-        peer.addClient(client);
-        return client;
+    private void accept(SocketChannel channel) throws IOException {
+        if (session.getEventLoopGroup() != null) {
+            session.getEventLoopGroup().register(channel, null, null);
+            return;
+        }
+        Socket socket = channel.socket();
+        MessageStream msgStream = new MessageStream(socket);
+        String handshake = msgStream.getInputStream().readUTF();
+        String neighborPeerId = HandshakeMessage.getPeerId(handshake);
+        Peer swarm = session.getSwarm(HandshakeMessage.getInfoHash(handshake));
+        if (swarm == null) {
+            P2PLogger.getLogger().log(Level.WARNING, "Peer [" + session.getPeerInfo().getPeerId() + "] refuses Peer [" + neighborPeerId
+                    + "], it asked for the unknown swarm [" + HandshakeMessage.getInfoHash(handshake) + "].");
+            throw new IOException("Unknown swarm");
+        }
+
+        Client client = createNewClient(swarm, socket, msgStream, neighborPeerId);
+        swarm.getLogger().log(Level.INFO, "Peer [" + session.getPeerInfo().getPeerId() + "] is connected from Peer [" + neighborPeerId + "].");
+        session.getConnectionExecutor().execute(client);
     }
 
-    private String getNeighborPeerId(MessageStream msgStream) throws IOException {
-        String message = msgStream.getInputStream().readUTF();
-        return message.substring(20, 24); //TODO change
+    private Client createNewClient(Peer swarm, Socket socket, MessageStream msgStream, String neighborPeerId) {
+        PeerInfo neighbor = new PeerInfo(neighborPeerId, socket.getInetAddress().getHostAddress(), socket.getPort(), false);
+        Client client = new Client(swarm, neighbor, socket, msgStream);
+        swarm.addClient(client);
+        return client;
     }
 }
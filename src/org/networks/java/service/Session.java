@@ -0,0 +1,227 @@
+package org.networks.java.service;
+
+import org.networks.java.helper.BufferPool;
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.helper.ConnectionExecutor;
+import org.networks.java.helper.Constants;
+import org.networks.java.helper.TokenBucket;
+import org.networks.java.helper.VerificationExecutor;
+import org.networks.java.model.PeerInfo;
+import org.networks.java.tasks.ReloadRateLimitsTask;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Process-wide side of a peer, shared by every swarm it hosts: the listening port, connection threads,
+ * event loops and buffers, the global bandwidth limits and the connection limit. Each swarm is a
+ * {@link Peer} for one file, found by the info-hash neighbours send in their handshake.
+ */
+public class Session {
+
+	private final PeerInfo peerInfo;
+	private final List<PeerInfo> neighbours;
+	private final CommonConfig commonConfig;
+
+	private final ConcurrentHashMap<String, Peer> swarms;
+	private final String defaultInfoHash;
+	private final AtomicInteger unfinishedSwarms;
+
+	private final ConnectionExecutor connectionExecutor;
+	private final VerificationExecutor verificationExecutor;
+	private final BufferPool bufferPool;
+	private final TokenBucket uploadLimit;
+	private final TokenBucket downloadLimit;
+	// current per-neighbour limits, for connections opened after a reload
+	private volatile long maxPeerUploadRate;
+	private volatile long maxPeerDownloadRate;
+	private final Semaphore connectionPermits;
+	private final Timer taskTimer = new Timer(true);
+	private EventLoopGroup eventLoopGroup;
+	private boolean listening;
+
+	public Session(PeerInfo peerInfo, List<PeerInfo> neighbours) throws IOException {
+		this.peerInfo = peerInfo;
+		this.neighbours = neighbours;
+		commonConfig = new CommonConfig();
+		P2PLogger.setLogger(peerInfo.getPeerId());
+
+		connectionExecutor = new ConnectionExecutor(commonConfig.getThreadMode(), commonConfig.getMaxConnectionThreads(),
+			"peer-" + peerInfo.getPeerId() + "-");
+		verificationExecutor = new VerificationExecutor(commonConfig.getVerifyThreads(), commonConfig.getVerifyQueueDepth(),
+			"peer-" + peerInfo.getPeerId() + "-verify-");
+		if (connectionExecutor.getThreadMode() != commonConfig.getThreadMode()) {
+			P2PLogger.getLogger().log(Level.WARNING, "Virtual threads are not supported by this JVM, using platform threads.");
+		}
+		bufferPool = new BufferPool(Constants.IO_BUFFER_SIZE, Constants.MAX_POOLED_IO_BUFFERS);
+		uploadLimit = new TokenBucket(commonConfig.getMaxUploadRate());
+		downloadLimit = new TokenBucket(commonConfig.getMaxDownloadRate());
+		maxPeerUploadRate = commonConfig.getMaxPeerUploadRate();
+		maxPeerDownloadRate = commonConfig.getMaxPeerDownloadRate();
+		connectionPermits = new Semaphore(commonConfig.getMaxConnections());
+
+		swarms = new ConcurrentHashMap<>();
+		defaultInfoHash = addSwarm(commonConfig).getInfoHash();
+		for (String swarmConfig : commonConfig.getSwarmConfigs())
+			addSwarm(new CommonConfig(commonConfig, swarmConfig));
+		unfinishedSwarms = new AtomicInteger(swarms.size());
+	}
+
+	private Peer addSwarm(CommonConfig swarmConfig) throws IOException {
+		Peer swarm = new Peer(this, swarmConfig);
+		if (swarms.putIfAbsent(swarm.getInfoHash(), swarm) != null)
+			throw new IllegalArgumentException("More than one swarm for [" + swarmConfig.getFileName() + "]");
+		P2PLogger.getLogger().log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] hosts the swarm [" + swarm.getInfoHash()
+			+ "] for [" + swarmConfig.getFileName() + "].");
+		return swarm;
+	}
+
+	/**
+	 * Starts accepting neighbours without connecting out yet, so that peers launched later can reach this
+	 * one while it waits for the rest of the swarm to come up.
+	 */
+	public synchronized void listen() throws IOException {
+		if (listening)
+			return;
+		listening = true;
+		if (commonConfig.getTransport() == Constants.Transport.NIO) {
+			eventLoopGroup = new EventLoopGroup(this, commonConfig.getEventLoopThreads());
+			eventLoopGroup.start();
+		}
+		connectionExecutor.execute(new Server(this));
+	}
+
+	public void start() throws IOException {
+		listen();
+		for (Peer swarm : new ArrayList<>(swarms.values()))
+			swarm.start();
+
+		long reloadInterval = commonConfig.getRateLimitReloadInterval() * Constants.SEC_TO_MILLI_SEC;
+		if (reloadInterval > 0)
+			taskTimer.schedule(new ReloadRateLimitsTask(this), reloadInterval, reloadInterval);
+	}
+
+	/**
+	 * Opens a connection to a neighbour on behalf of one swarm, if the connection limit allows it.
+	 */
+	void connect(Peer swarm, PeerInfo neighbour) {
+		if (!tryOpenConnection()) {
+			P2PLogger.getLogger().log(Level.WARNING, "Peer [" + peerInfo.getPeerId() + "] is at its connection limit and skips Peer ["
+				+ neighbour.getPeerId() + "] for swarm [" + swarm.getInfoHash() + "].");
+			return;
+		}
+		if (eventLoopGroup == null) {
+			connectionExecutor.execute(new Client(swarm, neighbour));
+			return;
+		}
+		try {
+			SocketChannel channel = SocketChannel.open(new InetSocketAddress(neighbour.getHostName(), neighbour.getPortNumber()));
+			eventLoopGroup.register(channel, neighbour, swarm);
+		} catch (IOException e) {
+			onConnectionClosed();
+		}
+	}
+
+	/**
+	 * Returns the swarm a handshake asks for; a handshake without an info-hash goes to the Common.cfg swarm.
+	 */
+	Peer getSwarm(String infoHash) {
+		return swarms.get(infoHash != null ? infoHash : defaultInfoHash);
+	}
+
+	boolean tryOpenConnection() {
+		return connectionPermits.tryAcquire();
+	}
+
+	void onConnectionClosed() {
+		connectionPermits.release();
+	}
+
+	/**
+	 * Called once a swarm has shut down; the process exits when the last one is done.
+	 */
+	void onSwarmFinished(Peer swarm) throws InterruptedException {
+		swarms.remove(swarm.getInfoHash(), swarm);
+		if (unfinishedSwarms.decrementAndGet() > 0)
+			return;
+		taskTimer.cancel();
+		verificationExecutor.shutdown(Constants.PROCESS_STALL_INTERVAL);
+		Thread.sleep(Constants.PROCESS_STALL_INTERVAL);
+		if (eventLoopGroup != null)
+			eventLoopGroup.shutdown();
+		System.exit(Constants.PROCESS_EXIT_CODE);
+	}
+
+	/**
+	 * Applies new global and per-neighbour limits in bytes per second; zero removes a limit.
+	 */
+	public void setRateLimits(long maxUploadRate, long maxDownloadRate, long maxPeerUploadRate, long maxPeerDownloadRate) {
+		if (uploadLimit.getRate() != maxUploadRate || downloadLimit.getRate() != maxDownloadRate) {
+			P2PLogger.getLogger().log(Level.INFO, "Peer [" + peerInfo.getPeerId() + "] limits upload to [" + maxUploadRate
+				+ "] and download to [" + maxDownloadRate + "] bytes per second.");
+		}
+		uploadLimit.setRate(maxUploadRate);
+		downloadLimit.setRate(maxDownloadRate);
+		this.maxPeerUploadRate = maxPeerUploadRate;
+		this.maxPeerDownloadRate = maxPeerDownloadRate;
+		swarms.values().forEach(swarm -> swarm.setPeerRateLimits(maxPeerUploadRate, maxPeerDownloadRate));
+	}
+
+	public long getMaxPeerUploadRate() {
+		return maxPeerUploadRate;
+	}
+
+	public long getMaxPeerDownloadRate() {
+		return maxPeerDownloadRate;
+	}
+
+	public PeerInfo getPeerInfo() {
+		return peerInfo;
+	}
+
+	public Collection<Peer> getSwarms() {
+		return Collections.unmodifiableCollection(swarms.values());
+	}
+
+	public List<PeerInfo> getNeighbours() {
+		return neighbours;
+	}
+
+	public CommonConfig getCommonConfig() {
+		return commonConfig;
+	}
+
+	public ConnectionExecutor getConnectionExecutor() {
+		return connectionExecutor;
+	}
+
+	public VerificationExecutor getVerificationExecutor() {
+		return verificationExecutor;
+	}
+
+	public EventLoopGroup getEventLoopGroup() {
+		return eventLoopGroup;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public TokenBucket getUploadLimit() {
+		return uploadLimit;
+	}
+
+	public TokenBucket getDownloadLimit() {
+		return downloadLimit;
+	}
+}
@@ -0,0 +1,22 @@
+package org.networks.java.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Classic tit-for-tat: the slots go to the neighbours that have been uploading to us the fastest.
+ */
+class TitForTatChoker implements Choker {
+
+	@Override
+	public <T extends Neighbour> List<T> selectPreferred(List<T> candidates, int slots) {
+		// Snapshot the rates so the sort sees a consistent ordering while the meters keep moving.
+		Map<T, Double> downloadRates = new HashMap<>();
+		candidates.forEach(neighbour -> downloadRates.put(neighbour, neighbour.getDownloadRate()));
+		List<T> ranked = new ArrayList<>(candidates);
+		ranked.sort((n1, n2) -> Double.compare(downloadRates.get(n2), downloadRates.get(n1)));
+		return new ArrayList<>(ranked.subList(0, Math.min(ranked.size(), slots)));
+	}
+}
@@ -0,0 +1,94 @@
+package org.networks.java.service;
+
+import org.networks.java.helper.CommonConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload slots of one swarm: the regular slots the choker hands out every unchoking interval and the single
+ * optimistic slot rotated every optimistic unchoking interval. Not thread-safe; both schedules run on the
+ * swarm's timer thread.
+ */
+public class Unchoker<T extends Neighbour> {
+
+	private final Choker choker;
+	private final Choker seedChoker;
+	private final Random random;
+
+	private List<T> preferred;
+	private T optimistic;
+
+	Unchoker(Choker choker, Choker seedChoker, Random random) {
+		this.choker = choker;
+		this.seedChoker = seedChoker;
+		this.random = random;
+		preferred = new ArrayList<>();
+	}
+
+	/**
+	 * Builds the chokers named in the config; a seeded {@code random} makes the optimistic picks repeatable.
+	 */
+	public static <T extends Neighbour> Unchoker<T> create(CommonConfig commonConfig, Random random) {
+		Choker choker;
+		switch (commonConfig.getChokingStrategy()) {
+			case ANTI_SNUB:
+				choker = new AntiSnubChoker(TimeUnit.SECONDS.toNanos(commonConfig.getSnubTimeout()));
+				break;
+			case TIT_FOR_TAT:
+			default:
+				choker = new TitForTatChoker();
+		}
+		return new Unchoker<>(choker, new SeedChoker(commonConfig.getSeedChokingStrategy()), random);
+	}
+
+	/**
+	 * Gives the regular slots to the best of the interested neighbours that still need pieces, ranked by the
+	 * seed choker once we hold the whole file, and chokes the ones that lost their slot. Returns false if
+	 * there was nobody to choke or unchoke.
+	 */
+	public boolean updatePreferred(List<T> interested, boolean seeding, int slots) {
+		List<T> candidates = new ArrayList<>(interested);
+		candidates.remove(optimistic);
+		if (candidates.isEmpty() && preferred.isEmpty())
+			return false;
+
+		List<T> newPreferred = (seeding ? seedChoker : choker).selectPreferred(candidates, slots);
+		newPreferred.forEach(Neighbour::unchokeNeighbor);
+		for (T neighbour : preferred) {
+			if (!newPreferred.contains(neighbour) && neighbour != optimistic)
+				neighbour.chokeNeighbor();
+		}
+		preferred = newPreferred;
+		return true;
+	}
+
+	/**
+	 * Moves the optimistic slot to a random interested neighbour outside the regular slots. Returns the new
+	 * optimistic neighbour, or null if there was none to pick.
+	 */
+	public T updateOptimistic(List<T> interested) {
+		List<T> eligible = new ArrayList<>(interested);
+		eligible.remove(optimistic);
+		eligible.removeAll(preferred);
+		if (eligible.isEmpty())
+			return null;
+
+		if (optimistic != null)
+			optimistic.chokeNeighbor();
+		optimistic = eligible.get(random.nextInt(eligible.size()));
+		optimistic.unchokeNeighbor();
+		return optimistic;
+	}
+
+	public List<T> getPreferred() {
+		return Collections.unmodifiableList(preferred);
+	}
+
+	public T getOptimistic() {
+		return optimistic;
+	}
+}
@@ -0,0 +1,110 @@
+package org.networks.java.simulation;
+
+import org.networks.java.helper.AtomicBitfield;
+import org.networks.java.helper.RateMeter;
+import org.networks.java.service.Neighbour;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One peer's end of a simulated link: what it knows about the neighbour and the choke and interest state in
+ * both directions. Rates are metered on the simulation's virtual clock.
+ */
+public class SimulatedConnection implements Neighbour {
+
+	private final SimulatedPeer owner;
+	private final SimulatedPeer remote;
+	private SimulatedConnection reverse;
+
+	private final AtomicBitfield remotePieces;
+	private final RateMeter downloadMeter;
+	private final RateMeter uploadMeter;
+	final List<Integer> requestedPieces = new ArrayList<>();
+
+	boolean amChoking = true;
+	boolean peerChoking = true;
+	boolean amInterested;
+	boolean peerInterested;
+	long lastPieceReceivedNanos;
+
+	private SimulatedConnection(SimulatedPeer owner, SimulatedPeer remote, int rateWindowSeconds) {
+		this.owner = owner;
+		this.remote = remote;
+		remotePieces = new AtomicBitfield(owner.getNumberOfPieces());
+		downloadMeter = new RateMeter(rateWindowSeconds, null, owner.getSimulation()::getNow);
+		uploadMeter = new RateMeter(rateWindowSeconds, null, owner.getSimulation()::getNow);
+	}
+
+	/**
+	 * Links two peers and returns the first one's end of the link.
+	 */
+	static SimulatedConnection connect(SimulatedPeer first, SimulatedPeer second, int rateWindowSeconds) {
+		SimulatedConnection forward = new SimulatedConnection(first, second, rateWindowSeconds);
+		SimulatedConnection backward = new SimulatedConnection(second, first, rateWindowSeconds);
+		forward.reverse = backward;
+		backward.reverse = forward;
+		return forward;
+	}
+
+	SimulatedPeer getOwner() {
+		return owner;
+	}
+
+	SimulatedPeer getRemote() {
+		return remote;
+	}
+
+	SimulatedConnection getReverse() {
+		return reverse;
+	}
+
+	AtomicBitfield getRemotePieces() {
+		return remotePieces;
+	}
+
+	void onPieceSent(int length) {
+		uploadMeter.update(length);
+	}
+
+	void onPieceReceived(int length) {
+		downloadMeter.update(length);
+		lastPieceReceivedNanos = owner.getSimulation().getNow();
+	}
+
+	@Override
+	public String getNeighborPeerId() {
+		return remote.getPeerId();
+	}
+
+	@Override
+	public double getDownloadRate() {
+		return downloadMeter.getRate();
+	}
+
+	@Override
+	public double getUploadRate() {
+		return uploadMeter.getRate();
+	}
+
+	@Override
+	public boolean isSnubbing(long timeoutNanos) {
+		return amInterested && owner.getSimulation().getNow() - lastPieceReceivedNanos > timeoutNanos;
+	}
+
+	@Override
+	public void chokeNeighbor() {
+		if (amChoking)
+			return;
+		amChoking = true;
+		owner.onChokeSent(this);
+	}
+
+	@Override
+	public void unchokeNeighbor() {
+		if (!amChoking)
+			return;
+		amChoking = false;
+		owner.onUnchokeSent(this);
+	}
+}
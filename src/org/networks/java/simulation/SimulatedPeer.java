@@ -0,0 +1,296 @@
+package org.networks.java.simulation;
+
+import org.networks.java.helper.AtomicBitfield;
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.helper.PiecePicker;
+import org.networks.java.service.Unchoker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A peer driven by the simulation's virtual clock. Choking uses the same {@link Unchoker} and chokers as a
+ * real peer on the same schedules, and pieces are picked by the same rarest-first {@link PiecePicker}.
+ * Transfers are modelled per piece: requests queue at the uploader, its uplink sends one piece at a time, and
+ * the piece then crosses the link latency and the downloader's downlink. There is no endgame mode.
+ */
+public class SimulatedPeer {
+
+	private final Simulation simulation;
+	private final CommonConfig commonConfig;
+	private final String peerId;
+	private final long uploadRate;
+	private final long downloadRate;
+	private final long latencyNanos;
+	private final int requestsPerConnection;
+
+	private final List<SimulatedConnection> connections = new ArrayList<>();
+	private final AtomicBitfield localPieces;
+	private final PiecePicker piecePicker;
+	private final BitSet requestedPieces = new BitSet();
+	private final Unchoker<SimulatedConnection> unchoker;
+
+	private final ArrayDeque<Upload> uploads = new ArrayDeque<>();
+	private boolean uploading;
+	private long downlinkFreeNanos;
+
+	private final boolean seed;
+	private long completeNanos = -1;
+	private long uploadBusyNanos;
+	private long uploadedBytes;
+	private long duplicatePieces;
+	private Runnable onComplete;
+
+	public SimulatedPeer(Simulation simulation, CommonConfig commonConfig, String peerId, boolean seed, long uploadRate,
+						 long downloadRate, long latencyNanos, Random random) {
+		this.simulation = simulation;
+		this.commonConfig = commonConfig;
+		this.peerId = peerId;
+		this.seed = seed;
+		this.uploadRate = uploadRate;
+		this.downloadRate = downloadRate;
+		this.latencyNanos = latencyNanos;
+		// Keep as many bytes in flight per connection as the real request pipeline does, in whole pieces.
+		requestsPerConnection = Math.max(1, (int) ((long) commonConfig.getPipelineDepth() * commonConfig.getBlockSize()
+			/ commonConfig.getPieceSize()));
+
+		int numberOfPieces = commonConfig.getNumberOfPieces();
+		localPieces = new AtomicBitfield(numberOfPieces);
+		piecePicker = new PiecePicker(numberOfPieces, random);
+		unchoker = Unchoker.create(commonConfig, random);
+		if (seed) {
+			localPieces.setAll();
+			for (int i = 0; i < numberOfPieces; i++)
+				piecePicker.remove(i);
+			completeNanos = 0;
+		}
+	}
+
+	public static void connect(SimulatedPeer first, SimulatedPeer second) {
+		SimulatedConnection connection = SimulatedConnection.connect(first, second, first.commonConfig.getRateWindowSeconds());
+		first.connections.add(connection);
+		second.connections.add(connection.getReverse());
+	}
+
+	/**
+	 * Exchanges bitfields with every neighbour and starts the two unchoking schedules at the given offsets,
+	 * as the timer of a peer process started at that point in their periods would.
+	 */
+	public void start(long unchokingOffsetNanos, long optimisticOffsetNanos, Runnable onComplete) {
+		this.onComplete = onComplete;
+		for (SimulatedConnection connection : connections) {
+			SimulatedPeer remote = connection.getRemote();
+			for (int i = remote.localPieces.nextSetBit(0); i >= 0; i = remote.localPieces.nextSetBit(i + 1)) {
+				connection.getRemotePieces().set(i);
+				piecePicker.increment(i);
+			}
+			updateInterest(connection);
+		}
+		simulation.schedulePeriodic(unchokingOffsetNanos, TimeUnit.SECONDS.toNanos(commonConfig.getUnchokingInterval()),
+			() -> unchoker.updatePreferred(getInterestedNeighbours(), isComplete(), commonConfig.getNumberOfPreferredNeighbors()));
+		simulation.schedulePeriodic(optimisticOffsetNanos, TimeUnit.SECONDS.toNanos(commonConfig.getOptimisticUnchokingInterval()),
+			() -> unchoker.updateOptimistic(getInterestedNeighbours()));
+	}
+
+	/**
+	 * Neighbours that want our pieces and do not have the whole file, as in the real peer's unchoking tasks.
+	 */
+	private List<SimulatedConnection> getInterestedNeighbours() {
+		return connections.stream().filter(connection -> connection.peerInterested && !connection.getRemotePieces().isComplete())
+			.collect(Collectors.toList());
+	}
+
+	private void send(Runnable delivery) {
+		simulation.schedule(latencyNanos, delivery);
+	}
+
+	private void updateInterest(SimulatedConnection connection) {
+		boolean interested = connection.getRemotePieces().intersectsAndNot(localPieces);
+		if (interested == connection.amInterested)
+			return;
+		connection.amInterested = interested;
+		if (interested)
+			connection.lastPieceReceivedNanos = simulation.getNow();
+		SimulatedConnection reverse = connection.getReverse();
+		send(() -> reverse.peerInterested = interested);
+		requestPieces(connection);
+	}
+
+	private void requestPieces(SimulatedConnection connection) {
+		while (!connection.peerChoking && connection.amInterested && connection.requestedPieces.size() < requestsPerConnection) {
+			int pieceIndex = piecePicker.pickRarest(connection.getRemotePieces(), requestedPieces::get);
+			if (pieceIndex == -1)
+				return;
+			requestedPieces.set(pieceIndex);
+			connection.requestedPieces.add(pieceIndex);
+			SimulatedConnection reverse = connection.getReverse();
+			send(() -> connection.getRemote().onRequest(reverse, pieceIndex));
+		}
+	}
+
+	void onChokeSent(SimulatedConnection connection) {
+		// Like the send queue of a real connection, requests not yet being served are dropped.
+		uploads.removeIf(upload -> upload.connection == connection);
+		SimulatedConnection reverse = connection.getReverse();
+		send(() -> connection.getRemote().onChoked(reverse));
+	}
+
+	void onUnchokeSent(SimulatedConnection connection) {
+		SimulatedConnection reverse = connection.getReverse();
+		send(() -> connection.getRemote().onUnchoked(reverse));
+	}
+
+	private void onChoked(SimulatedConnection connection) {
+		connection.peerChoking = true;
+		connection.requestedPieces.forEach(requestedPieces::clear);
+		connection.requestedPieces.clear();
+		connections.forEach(this::requestPieces);
+	}
+
+	private void onUnchoked(SimulatedConnection connection) {
+		connection.peerChoking = false;
+		requestPieces(connection);
+	}
+
+	private void onRequest(SimulatedConnection connection, int pieceIndex) {
+		if (connection.amChoking)
+			return;
+		uploads.add(new Upload(connection, pieceIndex));
+		startUpload();
+	}
+
+	private void startUpload() {
+		Upload upload;
+		while (!uploading && (upload = uploads.poll()) != null) {
+			if (upload.connection.amChoking)
+				continue;
+			int length = getPieceLength(upload.pieceIndex);
+			long durationNanos = transferNanos(length, uploadRate);
+			uploading = true;
+			uploadBusyNanos += durationNanos;
+			Upload sent = upload;
+			simulation.schedule(durationNanos, () -> {
+				uploading = false;
+				uploadedBytes += length;
+				sent.connection.onPieceSent(length);
+				SimulatedConnection reverse = sent.connection.getReverse();
+				send(() -> sent.connection.getRemote().onPieceArrived(reverse, sent.pieceIndex));
+				startUpload();
+			});
+		}
+	}
+
+	private void onPieceArrived(SimulatedConnection connection, int pieceIndex) {
+		long now = simulation.getNow();
+		downlinkFreeNanos = Math.max(now, downlinkFreeNanos) + transferNanos(getPieceLength(pieceIndex), downloadRate);
+		simulation.schedule(downlinkFreeNanos - now, () -> onPiece(connection, pieceIndex));
+	}
+
+	private void onPiece(SimulatedConnection connection, int pieceIndex) {
+		connection.requestedPieces.remove(Integer.valueOf(pieceIndex));
+		connection.onPieceReceived(getPieceLength(pieceIndex));
+		if (!localPieces.set(pieceIndex)) {
+			duplicatePieces++;
+			requestPieces(connection);
+			return;
+		}
+		piecePicker.remove(pieceIndex);
+		requestedPieces.clear(pieceIndex);
+		send(() -> connections.forEach(neighbour -> neighbour.getRemote().onHave(neighbour.getReverse(), pieceIndex)));
+		for (SimulatedConnection neighbour : connections) {
+			// Only neighbours holding the new piece can have run out of pieces we want.
+			if (neighbour.amInterested && neighbour.getRemotePieces().get(pieceIndex))
+				updateInterest(neighbour);
+		}
+		if (localPieces.isComplete()) {
+			completeNanos = simulation.getNow();
+			onComplete.run();
+		}
+		requestPieces(connection);
+	}
+
+	private void onHave(SimulatedConnection connection, int pieceIndex) {
+		if (!connection.getRemotePieces().set(pieceIndex))
+			return;
+		piecePicker.increment(pieceIndex);
+		if (!connection.amInterested && !localPieces.get(pieceIndex))
+			updateInterest(connection);
+		requestPieces(connection);
+	}
+
+	private int getPieceLength(int pieceIndex) {
+		long offset = (long) pieceIndex * commonConfig.getPieceSize();
+		return (int) Math.min(commonConfig.getPieceSize(), commonConfig.getFileSize() - offset);
+	}
+
+	private static long transferNanos(long bytes, long bytesPerSecond) {
+		return bytesPerSecond <= 0 ? 0 : bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+	}
+
+	Simulation getSimulation() {
+		return simulation;
+	}
+
+	int getNumberOfPieces() {
+		return localPieces.length();
+	}
+
+	public String getPeerId() {
+		return peerId;
+	}
+
+	public boolean isSeed() {
+		return seed;
+	}
+
+	public boolean isComplete() {
+		return localPieces.isComplete();
+	}
+
+	/**
+	 * Virtual time at which the peer held the whole file, or -1 if it never did.
+	 */
+	public long getCompleteNanos() {
+		return completeNanos;
+	}
+
+	public long getUploadRate() {
+		return uploadRate;
+	}
+
+	public long getDownloadRate() {
+		return downloadRate;
+	}
+
+	public long getUploadBusyNanos() {
+		return uploadBusyNanos;
+	}
+
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
+	public long getDuplicatePieces() {
+		return duplicatePieces;
+	}
+
+	public int getNumberOfNeighbours() {
+		return connections.size();
+	}
+
+	private static class Upload {
+
+		private final SimulatedConnection connection;
+		private final int pieceIndex;
+
+		Upload(SimulatedConnection connection, int pieceIndex) {
+			this.connection = connection;
+			this.pieceIndex = pieceIndex;
+		}
+	}
+}
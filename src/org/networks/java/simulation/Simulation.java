@@ -0,0 +1,74 @@
+package org.networks.java.simulation;
+
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Discrete-event loop on a virtual nanosecond clock. Events due at the same instant run in the order they
+ * were scheduled, so a run depends on nothing but its inputs.
+ */
+public class Simulation {
+
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+	private long now;
+	private long nextSequence;
+	private long processedEvents;
+
+	public long getNow() {
+		return now;
+	}
+
+	public long getProcessedEvents() {
+		return processedEvents;
+	}
+
+	public void schedule(long delayNanos, Runnable action) {
+		events.add(new Event(now + Math.max(0, delayNanos), nextSequence++, action));
+	}
+
+	/**
+	 * Runs {@code action} after {@code initialDelayNanos} and then every {@code periodNanos}, like the
+	 * fixed-delay timer tasks of a real peer.
+	 */
+	public void schedulePeriodic(long initialDelayNanos, long periodNanos, Runnable action) {
+		schedule(initialDelayNanos, () -> {
+			action.run();
+			schedulePeriodic(periodNanos, periodNanos, action);
+		});
+	}
+
+	/**
+	 * Processes events until {@code finished} holds, no event is left or the clock would pass {@code endNanos}.
+	 */
+	public void run(long endNanos, BooleanSupplier finished) {
+		while (!events.isEmpty() && !finished.getAsBoolean()) {
+			Event event = events.poll();
+			if (event.time > endNanos) {
+				now = endNanos;
+				return;
+			}
+			now = event.time;
+			event.action.run();
+			processedEvents++;
+		}
+	}
+
+	private static class Event implements Comparable<Event> {
+
+		private final long time;
+		private final long sequence;
+		private final Runnable action;
+
+		Event(long time, long sequence, Runnable action) {
+			this.time = time;
+			this.sequence = sequence;
+			this.action = action;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			int byTime = Long.compare(time, other.time);
+			return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+		}
+	}
+}
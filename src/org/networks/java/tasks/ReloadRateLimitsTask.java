@@ -0,0 +1,31 @@
+package org.networks.java.tasks;
+
+import org.networks.java.helper.CommonConfig;
+import org.networks.java.service.P2PLogger;
+import org.networks.java.service.Session;
+
+import java.util.TimerTask;
+import java.util.logging.Level;
+
+/**
+ * Re-reads Common.cfg so bandwidth limits can be changed while the peer is running.
+ */
+public class ReloadRateLimitsTask extends TimerTask {
+
+    private final Session session;
+
+    public ReloadRateLimitsTask(Session session) {
+        this.session = session;
+    }
+
+    @Override
+    public void run() {
+        try {
+            CommonConfig commonConfig = new CommonConfig();
+            session.setRateLimits(commonConfig.getMaxUploadRate(), commonConfig.getMaxDownloadRate(),
+                    commonConfig.getMaxPeerUploadRate(), commonConfig.getMaxPeerDownloadRate());
+        } catch (RuntimeException e) {
+            P2PLogger.getLogger().log(Level.WARNING, "Could not reload rate limits: " + e.getMessage());
+        }
+    }
+}
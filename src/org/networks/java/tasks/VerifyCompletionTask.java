@@ -19,7 +19,7 @@ public class VerifyCompletionTask extends TimerTask {
 	public void run() {
 		List<Client> completedPeers = peer.getCompletedPeers();
 		if (completedPeers.size() == peer.getPeerIdToNeighbourClientMapping().size()
-			&& peer.getPieceIndexStore().get(peer.getPeerInfo().getPeerId()).size() == peer.getNumberOfPiecesToBeDownloaded()) {
+			&& peer.hasCompleteFile()) {
 			try {
 				peer.shutdown();
 			} catch (IOException | InterruptedException e) {
@@ -0,0 +1,138 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+class AtomicBitfieldTest {
+
+    private static final int[] LENGTHS = {1, 7, 8, 9, 63, 64, 65, 127, 128, 129, 1000};
+
+    @Test
+    void setAndGet() {
+        AtomicBitfield bitfield = new AtomicBitfield(130);
+        Assertions.assertTrue(bitfield.isEmpty());
+        Assertions.assertTrue(bitfield.set(0));
+        Assertions.assertTrue(bitfield.set(63));
+        Assertions.assertTrue(bitfield.set(64));
+        Assertions.assertTrue(bitfield.set(129));
+        Assertions.assertFalse(bitfield.set(64));
+
+        Assertions.assertTrue(bitfield.get(0));
+        Assertions.assertTrue(bitfield.get(63));
+        Assertions.assertTrue(bitfield.get(64));
+        Assertions.assertTrue(bitfield.get(129));
+        Assertions.assertFalse(bitfield.get(1));
+        Assertions.assertFalse(bitfield.get(128));
+        Assertions.assertEquals(4, bitfield.cardinality());
+        Assertions.assertFalse(bitfield.isComplete());
+    }
+
+    @Test
+    void setAllOnlyCoversTheLength() {
+        for (int length : LENGTHS) {
+            AtomicBitfield bitfield = new AtomicBitfield(length);
+            bitfield.setAll();
+            Assertions.assertTrue(bitfield.isComplete());
+            Assertions.assertEquals(length, bitfield.cardinality());
+            Assertions.assertEquals(-1, bitfield.nextSetBit(length));
+
+            byte[] bytes = bitfield.toByteArray();
+            Assertions.assertEquals((length + 7) / 8, bytes.length);
+            Assertions.assertEquals(length, BitSet.valueOf(bytes).cardinality());
+        }
+    }
+
+    @Test
+    void nextSetBitCrossesWords() {
+        AtomicBitfield bitfield = new AtomicBitfield(200);
+        bitfield.set(5);
+        bitfield.set(64);
+        bitfield.set(199);
+
+        Assertions.assertEquals(5, bitfield.nextSetBit(0));
+        Assertions.assertEquals(5, bitfield.nextSetBit(5));
+        Assertions.assertEquals(64, bitfield.nextSetBit(6));
+        Assertions.assertEquals(199, bitfield.nextSetBit(65));
+        Assertions.assertEquals(-1, bitfield.nextSetBit(200));
+    }
+
+    @Test
+    void byteLayoutMatchesBitSet() {
+        Random random = new Random(11);
+        for (int length : LENGTHS) {
+            BitSet expected = new BitSet(length);
+            AtomicBitfield bitfield = new AtomicBitfield(length);
+            for (int i = 0; i < length; i++) {
+                if (random.nextBoolean()) {
+                    expected.set(i);
+                    bitfield.set(i);
+                }
+            }
+            byte[] bytes = bitfield.toByteArray();
+            // BitSet drops trailing zero bytes, the bitfield always sends one bit per piece.
+            Assertions.assertArrayEquals(expected.toByteArray(), Arrays.copyOf(bytes, expected.toByteArray().length));
+            Assertions.assertEquals(expected, BitSet.valueOf(bytes));
+        }
+    }
+
+    @Test
+    void valueOfRoundTrips() {
+        Random random = new Random(5);
+        for (int length : LENGTHS) {
+            AtomicBitfield bitfield = new AtomicBitfield(length);
+            for (int i = 0; i < length; i++) {
+                if (random.nextInt(3) == 0)
+                    bitfield.set(i);
+            }
+            byte[] bytes = bitfield.toByteArray();
+            AtomicBitfield copy = AtomicBitfield.valueOf(bytes, length);
+
+            Assertions.assertArrayEquals(bytes, copy.toByteArray());
+            Assertions.assertEquals(bitfield.cardinality(), copy.cardinality());
+            for (int i = 0; i < length; i++)
+                Assertions.assertEquals(bitfield.get(i), copy.get(i));
+        }
+    }
+
+    @Test
+    void valueOfIgnoresBitsBeyondTheLength() {
+        byte[] bytes = new byte[16];
+        Arrays.fill(bytes, (byte) 0xFF);
+
+        AtomicBitfield bitfield = AtomicBitfield.valueOf(bytes, 65);
+        Assertions.assertEquals(65, bitfield.cardinality());
+        Assertions.assertTrue(bitfield.isComplete());
+        Assertions.assertEquals(-1, bitfield.nextSetBit(65));
+        Assertions.assertEquals(9, bitfield.toByteArray().length);
+        Assertions.assertEquals(1, bitfield.toByteArray()[8]);
+    }
+
+    @Test
+    void valueOfAcceptsShortInput() {
+        AtomicBitfield bitfield = AtomicBitfield.valueOf(new byte[]{(byte) 0x81}, 100);
+        Assertions.assertEquals(2, bitfield.cardinality());
+        Assertions.assertTrue(bitfield.get(0));
+        Assertions.assertTrue(bitfield.get(7));
+        Assertions.assertEquals(-1, bitfield.nextSetBit(8));
+    }
+
+    @Test
+    void intersectsAndNot() {
+        AtomicBitfield neighbour = new AtomicBitfield(130);
+        AtomicBitfield local = new AtomicBitfield(130);
+        Assertions.assertFalse(neighbour.intersectsAndNot(local));
+
+        neighbour.set(129);
+        Assertions.assertTrue(neighbour.intersectsAndNot(local));
+        local.set(129);
+        Assertions.assertFalse(neighbour.intersectsAndNot(local));
+
+        local.set(3);
+        Assertions.assertFalse(neighbour.intersectsAndNot(local));
+        Assertions.assertTrue(local.intersectsAndNot(neighbour));
+    }
+}
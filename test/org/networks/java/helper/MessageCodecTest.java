@@ -0,0 +1,82 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.networks.java.helper.Constants.MessageType;
+import org.networks.java.model.BlockMessage;
+import org.networks.java.model.BlockRequest;
+import org.networks.java.model.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+class MessageCodecTest {
+
+    private static ByteBuffer encode(Message... messages) {
+        int length = 0;
+        for (Message message : messages)
+            length += MessageCodec.getEncodedLength(message);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (Message message : messages)
+            MessageCodec.encode(message, buffer);
+        return buffer.flip();
+    }
+
+    @Test
+    void decodesWhatWasEncoded() throws IOException {
+        ByteBuffer frames = encode(MessageCodec.controlMessage(MessageType.UNCHOKE), MessageCodec.haveMessage(42),
+                new BlockMessage(MessageType.REQUEST, new BlockRequest(3, 16384, 1000)));
+        List<MessageType> messageTypes = new ArrayList<>();
+        List<Integer> values = new ArrayList<>();
+        while (frames.hasRemaining()) {
+            MessageType decoded = MessageCodec.decode(frames, (messageType, payload) -> {
+                messageTypes.add(messageType);
+                while (payload.hasRemaining())
+                    values.add(payload.getInt());
+            });
+            Assertions.assertEquals(messageTypes.get(messageTypes.size() - 1), decoded);
+        }
+
+        Assertions.assertEquals(List.of(MessageType.UNCHOKE, MessageType.HAVE, MessageType.REQUEST), messageTypes);
+        Assertions.assertEquals(List.of(42, 3, 16384, 1000), values);
+    }
+
+    @Test
+    void decodeSkipsWhatTheHandlerLeaves() throws IOException {
+        ByteBuffer piece = ByteBuffer.allocate(MessageCodec.PIECE_HEADER_PAYLOAD_LEN + 100).putInt(7).putInt(0);
+        ByteBuffer frames = encode(new Message(MessageType.PIECE, piece.array()), MessageCodec.haveMessage(9));
+        int limit = frames.limit();
+
+        Assertions.assertEquals(MessageType.PIECE, MessageCodec.decode(frames, (messageType, payload) -> {
+            Assertions.assertEquals(MessageCodec.PIECE_HEADER_PAYLOAD_LEN + 100, payload.remaining());
+            Assertions.assertEquals(7, payload.getInt());
+        }));
+        Assertions.assertEquals(limit, frames.limit());
+        Assertions.assertEquals(MessageType.HAVE, MessageCodec.getMessageType(frames));
+        MessageCodec.decode(frames, (messageType, payload) -> Assertions.assertEquals(9, payload.getInt()));
+        Assertions.assertFalse(frames.hasRemaining());
+    }
+
+    @Test
+    void frameLengthWaitsForTheHeader() throws IOException {
+        ByteBuffer frames = encode(MessageCodec.haveMessage(1));
+        Assertions.assertEquals(MessageCodec.FRAME_HEADER_LEN + Constants.PIECE_INDEX_PAYLOAD_LEN,
+                MessageCodec.getFrameLength(frames));
+        frames.limit(MessageCodec.FRAME_HEADER_LEN - 1);
+        Assertions.assertEquals(-1, MessageCodec.getFrameLength(frames));
+    }
+
+    @Test
+    void rejectsInvalidHeaders() {
+        ByteBuffer negativeLength = ByteBuffer.allocate(MessageCodec.FRAME_HEADER_LEN).putInt(-1).put((byte) 0).flip();
+        Assertions.assertThrows(IOException.class, () -> MessageCodec.getFrameLength(negativeLength));
+
+        ByteBuffer unknownType = ByteBuffer.allocate(MessageCodec.FRAME_HEADER_LEN).putInt(0).put((byte) 100).flip();
+        Assertions.assertThrows(IOException.class, () -> MessageCodec.getMessageType(unknownType));
+        unknownType.put(Constants.MSG_LEN_LEN, (byte) -1);
+        Assertions.assertThrows(IOException.class, () -> MessageCodec.decode(unknownType, (messageType, payload) -> {
+        }));
+    }
+}
@@ -0,0 +1,76 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+class MetainfoTest {
+
+    private static final int PIECE_SIZE = 1024;
+
+    @TempDir
+    Path dir;
+
+    private Metainfo buildSample() throws IOException {
+        byte[] data = new byte[3 * PIECE_SIZE + 100];
+        new Random(1).nextBytes(data);
+        Path seedFile = dir.resolve("thefile");
+        Files.write(seedFile, data);
+        return Metainfo.build(seedFile, "thefile", PIECE_SIZE, "SHA-256");
+    }
+
+    @Test
+    void writtenMetainfoReadsBack() throws IOException {
+        Metainfo metainfo = buildSample();
+        Path path = dir.resolve("thefile.meta");
+        metainfo.write(path);
+
+        Metainfo read = Metainfo.read(path);
+        Assertions.assertEquals("thefile", read.getFileName());
+        Assertions.assertEquals(metainfo.getFileSize(), read.getFileSize());
+        Assertions.assertEquals(PIECE_SIZE, read.getPieceSize());
+        Assertions.assertEquals(4, read.getNumberOfPieces());
+        byte[] lastPiece = new byte[100];
+        System.arraycopy(Files.readAllBytes(dir.resolve("thefile")), 3 * PIECE_SIZE, lastPiece, 0, 100);
+        Assertions.assertTrue(read.verify(3, lastPiece));
+    }
+
+    @Test
+    void writeLeavesNoTemporaryFiles() throws IOException {
+        Metainfo metainfo = buildSample();
+        metainfo.write(dir.resolve("thefile.meta"));
+        metainfo.write(dir.resolve("thefile.meta"));
+        try (var files = Files.list(dir)) {
+            Assertions.assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    void emptyFileIsRejected() throws IOException {
+        Path path = Files.createFile(dir.resolve("empty.meta"));
+        IOException e = Assertions.assertThrows(IOException.class, () -> Metainfo.read(path));
+        Assertions.assertTrue(e.getMessage().contains(path.toString()));
+    }
+
+    @Test
+    void truncatedHashesAreRejected() throws IOException {
+        Path path = dir.resolve("thefile.meta");
+        buildSample().write(path);
+        String content = Files.readString(path).trim();
+        Files.writeString(path, content.substring(0, content.length() - 1));
+
+        Assertions.assertThrows(IOException.class, () -> Metainfo.read(path));
+    }
+
+    @Test
+    void malformedNumbersAreRejected() throws IOException {
+        Path path = dir.resolve("thefile.meta");
+        Files.writeString(path, "FileName thefile\nFileSize ten\nPieceSize 1024\nPieceHashes \n");
+        Assertions.assertThrows(IOException.class, () -> Metainfo.read(path));
+    }
+}
@@ -0,0 +1,75 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.networks.java.model.BlockRequest;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+class PartialPieceTest {
+
+    private static final int BLOCK_SIZE = 100;
+
+    @Test
+    void claimsEveryBlockOnceWithAShortLastBlock() {
+        PartialPiece partialPiece = new PartialPiece(2, 250, BLOCK_SIZE);
+        Assertions.assertTrue(partialPiece.isUntouched());
+        Assertions.assertEquals(new BlockRequest(2, 0, 100), partialPiece.claimBlock());
+        Assertions.assertEquals(new BlockRequest(2, 100, 100), partialPiece.claimBlock());
+        Assertions.assertEquals(new BlockRequest(2, 200, 50), partialPiece.claimBlock());
+        Assertions.assertNull(partialPiece.claimBlock());
+        Assertions.assertTrue(partialPiece.isFullyRequested());
+        Assertions.assertEquals(3, partialPiece.getOutstandingBlockCount());
+    }
+
+    @Test
+    void releasedBlockIsClaimedAgain() {
+        PartialPiece partialPiece = new PartialPiece(0, 200, BLOCK_SIZE);
+        BlockRequest first = partialPiece.claimBlock();
+        partialPiece.claimBlock();
+        partialPiece.releaseBlock(first.getOffset());
+
+        Assertions.assertFalse(partialPiece.isFullyRequested());
+        Assertions.assertEquals(first, partialPiece.claimBlock());
+    }
+
+    @Test
+    void duplicatedBlockStaysRequestedUntilEveryCopyIsReleased() {
+        PartialPiece partialPiece = new PartialPiece(0, 100, BLOCK_SIZE);
+        BlockRequest blockRequest = partialPiece.claimBlock();
+        partialPiece.claimDuplicateBlock(blockRequest.getOffset());
+
+        partialPiece.releaseBlock(blockRequest.getOffset());
+        Assertions.assertFalse(partialPiece.isUntouched());
+        Assertions.assertNull(partialPiece.claimBlock());
+        Assertions.assertEquals(List.of(blockRequest), partialPiece.getOutstandingBlocks());
+
+        partialPiece.releaseBlock(blockRequest.getOffset());
+        Assertions.assertTrue(partialPiece.isUntouched());
+        Assertions.assertEquals(blockRequest, partialPiece.claimBlock());
+    }
+
+    @Test
+    void receivedBlockIsNeverReleased() {
+        PartialPiece partialPiece = new PartialPiece(0, 200, BLOCK_SIZE);
+        BlockRequest blockRequest = partialPiece.claimBlock();
+        Assertions.assertTrue(partialPiece.receiveBlock(blockRequest.getOffset(), ByteBuffer.allocate(100)));
+        partialPiece.releaseBlock(blockRequest.getOffset());
+
+        Assertions.assertFalse(partialPiece.isUntouched());
+        Assertions.assertEquals(0, partialPiece.getOutstandingBlockCount());
+        Assertions.assertEquals(new BlockRequest(0, 100, 100), partialPiece.claimBlock());
+    }
+
+    @Test
+    void rejectsDuplicateAndMisalignedBlocks() {
+        PartialPiece partialPiece = new PartialPiece(0, 150, BLOCK_SIZE);
+        Assertions.assertFalse(partialPiece.receiveBlock(50, ByteBuffer.allocate(100)));
+        Assertions.assertFalse(partialPiece.receiveBlock(100, ByteBuffer.allocate(100)));
+        Assertions.assertTrue(partialPiece.receiveBlock(100, ByteBuffer.allocate(50)));
+        Assertions.assertFalse(partialPiece.receiveBlock(100, ByteBuffer.allocate(50)));
+        Assertions.assertTrue(partialPiece.receiveBlock(0, ByteBuffer.allocate(100)));
+        Assertions.assertTrue(partialPiece.isComplete());
+    }
+}
@@ -0,0 +1,147 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+class PiecePickerTest {
+
+    private static AtomicBitfield allPieces(int numberOfPieces) {
+        AtomicBitfield pieces = new AtomicBitfield(numberOfPieces);
+        pieces.setAll();
+        return pieces;
+    }
+
+    @Test
+    void picksNothingWithoutAvailability() {
+        PiecePicker picker = new PiecePicker(8, new Random(1));
+        Assertions.assertEquals(8, picker.getMissingCount());
+        Assertions.assertEquals(-1, picker.pickRarest(allPieces(8), i -> false));
+    }
+
+    @Test
+    void picksRarestPiece() {
+        PiecePicker picker = new PiecePicker(4, new Random(1));
+        for (int i = 0; i < 3; i++)
+            picker.increment(0);
+        picker.increment(1);
+        picker.increment(2);
+        picker.increment(2);
+
+        Assertions.assertEquals(1, picker.pickRarest(allPieces(4), i -> false));
+        Assertions.assertEquals(2, picker.pickRarest(allPieces(4), i -> i == 1));
+        Assertions.assertEquals(0, picker.pickRarest(allPieces(4), i -> i != 0));
+    }
+
+    @Test
+    void picksOnlyPiecesTheNeighbourHas() {
+        PiecePicker picker = new PiecePicker(4, new Random(1));
+        picker.increment(allPieces(4));
+        AtomicBitfield neighbourPieces = new AtomicBitfield(4);
+        neighbourPieces.set(3);
+
+        Assertions.assertEquals(3, picker.pickRarest(neighbourPieces, i -> false));
+        Assertions.assertEquals(-1, picker.pickRarest(neighbourPieces, i -> i == 3));
+    }
+
+    @Test
+    void decrementMovesPieceToRarerBucket() {
+        PiecePicker picker = new PiecePicker(3, new Random(1));
+        picker.increment(allPieces(3));
+        picker.increment(allPieces(3));
+        picker.decrement(2);
+
+        Assertions.assertEquals(1, picker.getAvailability(2));
+        Assertions.assertEquals(2, picker.pickRarest(allPieces(3), i -> false));
+
+        picker.decrement(2);
+        picker.decrement(2);
+        Assertions.assertEquals(0, picker.getAvailability(2));
+        Assertions.assertNotEquals(2, picker.pickRarest(allPieces(3), i -> false));
+    }
+
+    @Test
+    void removedPiecesAreNeverPicked() {
+        PiecePicker picker = new PiecePicker(3, new Random(1));
+        picker.increment(allPieces(3));
+        picker.increment(0);
+        picker.increment(0);
+        picker.remove(1);
+        picker.remove(1);
+
+        Assertions.assertEquals(2, picker.getMissingCount());
+        Assertions.assertFalse(picker.isMissing(1));
+        Assertions.assertEquals(2, picker.pickRarest(allPieces(3), i -> false));
+
+        // Availability of a removed piece is still counted but does not disturb the buckets.
+        picker.increment(1);
+        picker.increment(1);
+        picker.decrement(2);
+        Assertions.assertEquals(3, picker.getAvailability(1));
+        Assertions.assertEquals(0, picker.pickRarest(allPieces(3), i -> false));
+    }
+
+    @Test
+    void seededPickersBreakTiesTheSameWay() {
+        PiecePicker first = new PiecePicker(64, new Random(7));
+        PiecePicker second = new PiecePicker(64, new Random(7));
+        first.increment(allPieces(64));
+        second.increment(allPieces(64));
+        for (int i = 0; i < 64; i++) {
+            int pick = first.pickRarest(allPieces(64), piece -> false);
+            Assertions.assertEquals(pick, second.pickRarest(allPieces(64), piece -> false));
+            first.remove(pick);
+            second.remove(pick);
+        }
+        Assertions.assertEquals(0, first.getMissingCount());
+    }
+
+    @Test
+    void matchesBruteForceUnderRandomUpdates() {
+        int numberOfPieces = 200;
+        Random random = new Random(42);
+        PiecePicker picker = new PiecePicker(numberOfPieces, new Random(3));
+        int[] availability = new int[numberOfPieces];
+        boolean[] missing = new boolean[numberOfPieces];
+        Arrays.fill(missing, true);
+        AtomicBitfield neighbourPieces = allPieces(numberOfPieces);
+
+        for (int step = 0; step < 20_000; step++) {
+            int piece = random.nextInt(numberOfPieces);
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                picker.increment(piece);
+                availability[piece]++;
+            } else if (operation < 9) {
+                picker.decrement(piece);
+                availability[piece] = Math.max(0, availability[piece] - 1);
+            } else if (step % 50 == 0) {
+                picker.remove(piece);
+                missing[piece] = false;
+            }
+
+            int rarest = Integer.MAX_VALUE;
+            int missingCount = 0;
+            for (int i = 0; i < numberOfPieces; i++) {
+                Assertions.assertEquals(availability[i], picker.getAvailability(i));
+                Assertions.assertEquals(missing[i], picker.isMissing(i));
+                if (missing[i]) {
+                    missingCount++;
+                    if (availability[i] > 0)
+                        rarest = Math.min(rarest, availability[i]);
+                }
+            }
+            Assertions.assertEquals(missingCount, picker.getMissingCount());
+
+            int pick = picker.pickRarest(neighbourPieces, i -> false);
+            if (rarest == Integer.MAX_VALUE) {
+                Assertions.assertEquals(-1, pick);
+            } else {
+                Assertions.assertTrue(missing[pick]);
+                Assertions.assertEquals(rarest, availability[pick]);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+class ResumeFileTest {
+
+    // Layout of the resume file: magic, version, file size, piece size, piece count, then a flag and CRC per piece.
+    private static final int HEADER_LEN = 24;
+    private static final int SLOT_LEN = 5;
+
+    private static final long FILE_SIZE = 10_000;
+    private static final int PIECE_SIZE = 1024;
+    private static final int NUMBER_OF_PIECES = 10;
+
+    @TempDir
+    Path dir;
+
+    private Path path() {
+        return dir.resolve("thefile.resume");
+    }
+
+    private ResumeFile open() throws IOException {
+        return new ResumeFile(path(), FILE_SIZE, PIECE_SIZE, NUMBER_OF_PIECES);
+    }
+
+    private static byte[] randomPiece(long seed) {
+        byte[] piece = new byte[PIECE_SIZE];
+        new Random(seed).nextBytes(piece);
+        return piece;
+    }
+
+    @Test
+    void newFileHasNoPieces() throws IOException {
+        ResumeFile resumeFile = open();
+        Assertions.assertTrue(resumeFile.getResumedPieces().isEmpty());
+        resumeFile.close(false);
+        Assertions.assertEquals(HEADER_LEN + NUMBER_OF_PIECES * SLOT_LEN, Files.size(path()));
+    }
+
+    @Test
+    void recordedPiecesSurviveReopening() throws IOException {
+        byte[] first = randomPiece(1);
+        byte[] last = randomPiece(2);
+        ResumeFile resumeFile = open();
+        resumeFile.record(Map.of(0, first, NUMBER_OF_PIECES - 1, last));
+        resumeFile.close(true);
+
+        ResumeFile reopened = open();
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(NUMBER_OF_PIECES - 1);
+        Assertions.assertEquals(expected, reopened.getResumedPieces());
+        Assertions.assertEquals(ResumeFile.checksum(first), reopened.getChecksum(0));
+        Assertions.assertEquals(ResumeFile.checksum(last), reopened.getChecksum(NUMBER_OF_PIECES - 1));
+        reopened.close(false);
+    }
+
+    @Test
+    void checksumIsCrc32c() {
+        byte[] piece = randomPiece(3);
+        CRC32C crc = new CRC32C();
+        crc.update(piece);
+        Assertions.assertEquals((int) crc.getValue(), ResumeFile.checksum(piece));
+        piece[PIECE_SIZE / 2] ^= 1;
+        Assertions.assertNotEquals((int) crc.getValue(), ResumeFile.checksum(piece));
+    }
+
+    @Test
+    void clearedPiecesAreForgotten() throws IOException {
+        ResumeFile resumeFile = open();
+        resumeFile.record(Map.of(3, randomPiece(4), 4, randomPiece(5)));
+        resumeFile.clear(3);
+        resumeFile.close(false);
+
+        ResumeFile reopened = open();
+        Assertions.assertFalse(reopened.getResumedPieces().get(3));
+        Assertions.assertTrue(reopened.getResumedPieces().get(4));
+        reopened.close(false);
+    }
+
+    @Test
+    void truncatedFileStartsOver() throws IOException {
+        ResumeFile resumeFile = open();
+        resumeFile.record(Map.of(1, randomPiece(6)));
+        resumeFile.close(false);
+        try (FileChannel channel = FileChannel.open(path(), StandardOpenOption.WRITE)) {
+            channel.truncate(HEADER_LEN + SLOT_LEN + 2);
+        }
+
+        ResumeFile reopened = open();
+        Assertions.assertTrue(reopened.getResumedPieces().isEmpty());
+        reopened.close(false);
+        Assertions.assertEquals(HEADER_LEN + NUMBER_OF_PIECES * SLOT_LEN, Files.size(path()));
+    }
+
+    @Test
+    void fileForAnotherDownloadStartsOver() throws IOException {
+        ResumeFile resumeFile = open();
+        resumeFile.record(Map.of(1, randomPiece(7)));
+        resumeFile.close(false);
+
+        // Same piece count and so the same size, but a different file length in the header.
+        ResumeFile other = new ResumeFile(path(), FILE_SIZE - 1, PIECE_SIZE, NUMBER_OF_PIECES);
+        Assertions.assertTrue(other.getResumedPieces().isEmpty());
+        other.close(false);
+    }
+
+    @Test
+    void corruptHeaderStartsOver() throws IOException {
+        ResumeFile resumeFile = open();
+        resumeFile.record(Map.of(2, randomPiece(8)));
+        resumeFile.close(false);
+        try (FileChannel channel = FileChannel.open(path(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), 0);
+        }
+
+        ResumeFile reopened = open();
+        Assertions.assertTrue(reopened.getResumedPieces().isEmpty());
+        reopened.close(false);
+    }
+
+    @Test
+    void tornSlotFailsTheChecksum() throws IOException {
+        byte[] piece = randomPiece(9);
+        ResumeFile resumeFile = open();
+        resumeFile.close(false);
+        // Only the present flag of slot 5 reached the disk, not its CRC.
+        try (FileChannel channel = FileChannel.open(path(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), HEADER_LEN + 5 * SLOT_LEN);
+        }
+
+        ResumeFile reopened = open();
+        Assertions.assertTrue(reopened.getResumedPieces().get(5));
+        Assertions.assertNotEquals(ResumeFile.checksum(piece), reopened.getChecksum(5));
+        reopened.close(false);
+    }
+}
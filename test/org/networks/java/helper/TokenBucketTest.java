@@ -0,0 +1,79 @@
+package org.networks.java.helper;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    // Slack for the time that passes between two reservations in a test.
+    private static final long SLACK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void zeroRateNeverWaits() {
+        TokenBucket bucket = new TokenBucket(0);
+        Assertions.assertEquals(0, bucket.getRate());
+        for (int i = 0; i < 10; i++)
+            Assertions.assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void negativeRateDisablesTheLimit() {
+        TokenBucket bucket = new TokenBucket(-5);
+        Assertions.assertEquals(0, bucket.getRate());
+        Assertions.assertEquals(0, bucket.reserve(1_000_000));
+    }
+
+    @Test
+    void startsWithOneSecondOfBurst() {
+        TokenBucket bucket = new TokenBucket(1000);
+        Assertions.assertEquals(0, bucket.reserve(1000));
+        assertDelay(SECOND, bucket.reserve(1000));
+    }
+
+    @Test
+    void debtAccumulates() {
+        TokenBucket bucket = new TokenBucket(1000);
+        bucket.reserve(1000);
+        assertDelay(SECOND, bucket.reserve(1000));
+        assertDelay(SECOND + SECOND / 2, bucket.reserve(500));
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10_000);
+        bucket.reserve(10_000);
+        TimeUnit.MILLISECONDS.sleep(150);
+        // At least 1500 bytes have come back.
+        Assertions.assertEquals(0, bucket.reserve(1000));
+    }
+
+    @Test
+    void refillIsCappedAtOneSecond() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1000);
+        TimeUnit.MILLISECONDS.sleep(300);
+        Assertions.assertEquals(0, bucket.reserve(1000));
+        assertDelay(SECOND, bucket.reserve(1000));
+    }
+
+    @Test
+    void setRateAppliesToLaterReservations() {
+        TokenBucket bucket = new TokenBucket(1000);
+        bucket.reserve(1000);
+
+        bucket.setRate(0);
+        Assertions.assertEquals(0, bucket.getRate());
+        Assertions.assertEquals(0, bucket.reserve(1_000_000));
+
+        bucket.setRate(2000);
+        Assertions.assertEquals(2000, bucket.getRate());
+        assertDelay(SECOND / 2, bucket.reserve(1000));
+    }
+
+    private static void assertDelay(long expectedNanos, long delayNanos) {
+        Assertions.assertTrue(delayNanos <= expectedNanos && delayNanos > expectedNanos - SLACK,
+                "expected about " + expectedNanos + " ns but was " + delayNanos);
+    }
+}
@@ -0,0 +1,86 @@
+package org.networks.java.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.networks.java.model.BlockRequest;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RequestPipelineTest {
+
+	private static final int BLOCK_SIZE = 16384;
+
+	private static BlockRequest block(int pieceIndex) {
+		return new BlockRequest(pieceIndex, 0, BLOCK_SIZE);
+	}
+
+	@Test
+	void reserveStopsAtTheDepth() {
+		RequestPipeline pipeline = new RequestPipeline(2, 8, false, BLOCK_SIZE);
+		Assertions.assertTrue(pipeline.tryReserve(block(0)));
+		Assertions.assertTrue(pipeline.tryReserve(block(1)));
+		Assertions.assertFalse(pipeline.hasCapacity());
+		Assertions.assertFalse(pipeline.tryReserve(block(2)));
+
+		Assertions.assertTrue(pipeline.onBlockReceived(block(0)));
+		Assertions.assertTrue(pipeline.tryReserve(block(2)));
+	}
+
+	@Test
+	void reserveRefusesARequestAlreadyInFlight() {
+		RequestPipeline pipeline = new RequestPipeline(4, 8, false, BLOCK_SIZE);
+		Assertions.assertTrue(pipeline.tryReserve(block(0)));
+		Assertions.assertFalse(pipeline.tryReserve(block(0)));
+		Assertions.assertTrue(pipeline.contains(block(0)));
+
+		Assertions.assertTrue(pipeline.cancel(block(0)));
+		Assertions.assertFalse(pipeline.cancel(block(0)));
+		Assertions.assertTrue(pipeline.tryReserve(block(0)));
+	}
+
+	@Test
+	void clearReturnsWhatWasInFlight() {
+		RequestPipeline pipeline = new RequestPipeline(4, 8, false, BLOCK_SIZE);
+		pipeline.tryReserve(block(3));
+		pipeline.tryReserve(block(1));
+		Assertions.assertEquals(List.of(block(3), block(1)), pipeline.clear());
+		Assertions.assertFalse(pipeline.onBlockReceived(block(3)));
+		Assertions.assertTrue(pipeline.hasCapacity());
+	}
+
+	@Test
+	void concurrentReservesNeitherDuplicateNorOverfill() throws Exception {
+		int threads = 8;
+		RequestPipeline pipeline = new RequestPipeline(4, 8, false, BLOCK_SIZE);
+		AtomicInteger reserved = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] futures = new Future<?>[threads];
+			for (int t = 0; t < threads; t++) {
+				futures[t] = executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < 8; i++) {
+						if (pipeline.tryReserve(block(i)))
+							reserved.incrementAndGet();
+					}
+					return null;
+				});
+			}
+			start.countDown();
+			for (Future<?> future : futures)
+				future.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assertions.assertEquals(4, reserved.get());
+		Assertions.assertEquals(4, pipeline.clear().size());
+	}
+}
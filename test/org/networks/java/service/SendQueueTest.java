@@ -0,0 +1,156 @@
+package org.networks.java.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.networks.java.helper.Constants.MessageType;
+import org.networks.java.helper.MessageCodec;
+import org.networks.java.model.FileRegionMessage;
+import org.networks.java.model.Message;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class SendQueueTest {
+
+	private static Message piece(int blockLength) {
+		return new Message(MessageType.PIECE, new byte[MessageCodec.PIECE_HEADER_PAYLOAD_LEN + blockLength]);
+	}
+
+	private static CompletableFuture<Boolean> putAsync(SendQueue queue, Message msg) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return queue.put(msg);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	private static void assertBlocked(CompletableFuture<Boolean> future) {
+		Assertions.assertThrows(TimeoutException.class, () -> future.get(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	void controlMessagesGoAheadOfData() {
+		SendQueue queue = new SendQueue(1 << 20);
+		Message first = piece(100);
+		Message second = new FileRegionMessage(1, 0, 100);
+		Message choke = MessageCodec.controlMessage(MessageType.CHOKE);
+		Message have = MessageCodec.haveMessage(7);
+		queue.add(first);
+		queue.add(second);
+		queue.add(choke);
+		queue.add(have);
+
+		Assertions.assertSame(choke, queue.poll());
+		Assertions.assertSame(have, queue.poll());
+		Assertions.assertSame(first, queue.poll());
+		Assertions.assertSame(second, queue.poll());
+		Assertions.assertNull(queue.poll());
+		Assertions.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void endOfStreamStaysBehindData() {
+		SendQueue queue = new SendQueue(1 << 20);
+		Message data = piece(100);
+		Message endOfStream = new Message(null, null);
+		Message unchoke = MessageCodec.controlMessage(MessageType.UNCHOKE);
+		queue.add(data);
+		queue.add(endOfStream);
+		queue.add(unchoke);
+
+		Assertions.assertSame(unchoke, queue.poll());
+		Assertions.assertSame(data, queue.poll());
+		Assertions.assertSame(endOfStream, queue.poll());
+	}
+
+	@Test
+	void budgetCountsOnlyBlockBytes() {
+		SendQueue queue = new SendQueue(1000);
+		for (int i = 0; i < 100; i++)
+			queue.add(MessageCodec.controlMessage(MessageType.INTERESTED));
+		Assertions.assertTrue(queue.hasCapacity());
+
+		queue.add(piece(600));
+		Assertions.assertTrue(queue.hasCapacity());
+		queue.add(new FileRegionMessage(0, 0, 400));
+		Assertions.assertFalse(queue.hasCapacity());
+	}
+
+	@Test
+	void addIgnoresTheBudget() {
+		SendQueue queue = new SendQueue(1000);
+		queue.add(piece(900));
+		queue.add(piece(900));
+		Assertions.assertFalse(queue.hasCapacity());
+
+		for (int i = 0; i < 2; i++)
+			Assertions.assertEquals(MessageType.PIECE, queue.poll().getMessageType());
+		Assertions.assertTrue(queue.hasCapacity());
+	}
+
+	@Test
+	void putWaitsForBudget() throws Exception {
+		SendQueue queue = new SendQueue(1000);
+		Assertions.assertTrue(queue.put(piece(800)));
+		CompletableFuture<Boolean> blocked = putAsync(queue, piece(800));
+		assertBlocked(blocked);
+
+		// Control messages are never held back by the data budget.
+		Assertions.assertTrue(queue.put(MessageCodec.controlMessage(MessageType.CHOKE)));
+
+		Assertions.assertEquals(MessageType.CHOKE, queue.poll().getMessageType());
+		Assertions.assertEquals(MessageType.PIECE, queue.poll().getMessageType());
+		Assertions.assertTrue(blocked.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void putAdmitsAnOversizedMessageIntoAnEmptyQueue() throws InterruptedException {
+		SendQueue queue = new SendQueue(100);
+		Assertions.assertTrue(queue.put(piece(500)));
+		Assertions.assertFalse(queue.hasCapacity());
+	}
+
+	@Test
+	void removeDataFreesBudget() throws Exception {
+		SendQueue queue = new SendQueue(1000);
+		queue.add(new FileRegionMessage(3, 0, 900));
+		queue.add(new FileRegionMessage(3, 900, 100));
+		CompletableFuture<Boolean> blocked = putAsync(queue, piece(500));
+		assertBlocked(blocked);
+
+		queue.removeData(msg -> ((FileRegionMessage) msg).getOffset() == 0);
+		Assertions.assertTrue(blocked.get(5, TimeUnit.SECONDS));
+		Assertions.assertEquals(900, ((FileRegionMessage) queue.poll()).getOffset());
+		Assertions.assertEquals(MessageType.PIECE, queue.poll().getMessageType());
+		Assertions.assertNull(queue.poll());
+	}
+
+	@Test
+	void closeDropsQueuedMessagesAndRefusesNewOnes() throws InterruptedException {
+		SendQueue queue = new SendQueue(1000);
+		queue.add(piece(900));
+		queue.add(MessageCodec.controlMessage(MessageType.CHOKE));
+		queue.close();
+
+		Assertions.assertTrue(queue.isEmpty());
+		Assertions.assertTrue(queue.hasCapacity());
+		Assertions.assertNull(queue.poll());
+		queue.add(MessageCodec.controlMessage(MessageType.UNCHOKE));
+		Assertions.assertFalse(queue.put(piece(10)));
+		Assertions.assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void closeWakesBlockedProducers() throws Exception {
+		SendQueue queue = new SendQueue(1000);
+		queue.add(piece(1000));
+		CompletableFuture<Boolean> blocked = putAsync(queue, piece(100));
+		assertBlocked(blocked);
+
+		queue.close();
+		Assertions.assertFalse(blocked.get(5, TimeUnit.SECONDS));
+	}
+}